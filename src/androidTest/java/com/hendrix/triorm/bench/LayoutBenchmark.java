@@ -0,0 +1,162 @@
+package com.hendrix.triorm.bench;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.hendrix.triorm.TriData;
+import com.hendrix.triorm.TriDatabase;
+import com.hendrix.triorm.TriTable;
+import com.hendrix.triorm.TriTable.Layout;
+
+import java.util.Random;
+
+/**
+ * a benchmark of the lookup and scan costs of every {@link com.hendrix.triorm.TriTable.Layout}.
+ * every layout is measured on it's own scratch database, that is deleted afterwards.
+ * it is part of the instrumentation sources, so it is not packaged with the library. run it on a device, off the main thread:
+ *
+ * <pre>
+ * {@code Log.d("bench", LayoutBenchmark.run(context, 10000, 2000));}
+ * </pre>
+ *
+ * @author Tomer Shalev
+ */
+@SuppressWarnings("UnusedDeclaration")
+public final class LayoutBenchmark {
+
+    private LayoutBenchmark() {
+    }
+
+    /**
+     * the benchmarked data, with numeric identifiers so all of the layouts can hold it
+     */
+    public static class BenchData extends TriData {
+        private static final long serialVersionUID = 0L;
+
+        public String payload = null;
+
+        public BenchData() {
+        }
+
+        public BenchData(String id, String payload) {
+            super(id);
+
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * the result of a single layout
+     */
+    public static class Result {
+        public Layout layout;
+        /**
+         * time to insert all of the rows in one transaction
+         */
+        public long   insertNanos;
+        /**
+         * average time of a random lookup by identifier
+         */
+        public long   lookupNanos;
+        /**
+         * time of a full scan of all of the rows
+         */
+        public long   scanNanos;
+        /**
+         * time of a scan of a tenth of the rows by identifier range
+         */
+        public long   rangeNanos;
+
+        @Override
+        public String toString() {
+            return layout + ":: (insert->" + insertNanos / 1000000 + "ms, lookup->" + lookupNanos / 1000 + "us, scan->"
+                    + scanNanos / 1000000 + "ms, range->" + rangeNanos / 1000000 + "ms)";
+        }
+    }
+
+    /**
+     * benchmark all of the layouts
+     *
+     * @param ctx       a context
+     * @param rows      amount of rows
+     * @param lookups   amount of random lookups by identifier
+     *
+     * @return a printable report
+     */
+    public static String run(Context ctx, int rows, int lookups) {
+        StringBuilder report = new StringBuilder("LayoutBenchmark:: (rows->" + rows + ", lookups->" + lookups + ")");
+
+        for (Layout layout : Layout.values())
+            report.append('\n').append(run(ctx, layout, rows, lookups));
+
+        return report.toString();
+    }
+
+    /**
+     * benchmark a single layout
+     *
+     * @param ctx       a context
+     * @param layout    the layout
+     * @param rows      amount of rows
+     * @param lookups   amount of random lookups by identifier
+     *
+     * @return the {@link Result}
+     */
+    @SuppressWarnings("deprecation") // every layout has it's own scratch database, so the table can not be declared by an annotation
+    public static Result run(Context ctx, Layout layout, int rows, int lookups) {
+        String      dbName  = "triorm_bench_" + layout.name().toLowerCase();
+
+        ctx.deleteDatabase(dbName);
+
+        TriDatabase database = new TriDatabase.Builder(ctx).name(dbName).addTable("bench", BenchData.class)
+                                                            .layout(BenchData.class, layout).build();
+
+        TriTable<BenchData> table   = database.getTable(BenchData.class);
+        Result              result  = new Result();
+        Random              random  = new Random(rows);
+        long                base    = 1000000000L;
+
+        result.layout = table.layout();
+
+        try {
+            long            start = System.nanoTime();
+            SQLiteDatabase  db    = table.getWritableDatabase();
+
+            db.beginTransaction();
+
+            try {
+                for (int ix = 0; ix < rows; ix++)
+                    table.addData(new BenchData(String.valueOf(base + ix), "payload of " + ix));
+
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            result.insertNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+
+            for (int ix = 0; ix < lookups; ix++)
+                table.getData(String.valueOf(base + random.nextInt(rows)));
+
+            result.lookupNanos = (System.nanoTime() - start) / Math.max(1, lookups);
+
+            start = System.nanoTime();
+            table.getAllData(rows);
+            result.scanNanos = System.nanoTime() - start;
+
+            long from = base + rows / 2;
+
+            start = System.nanoTime();
+            table.getDataBetweenId(String.valueOf(from), String.valueOf(from + rows / 10));
+            result.rangeNanos = System.nanoTime() - start;
+        } finally {
+            table.close();
+            ctx.deleteDatabase(dbName);
+        }
+
+        return result;
+    }
+
+}
@@ -0,0 +1,285 @@
+package com.hendrix.triorm.bench;
+
+import com.hendrix.triorm.TriData;
+import com.hendrix.triorm.interfaces.IClassDictionary;
+import com.hendrix.triorm.utils.SSerialize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Random;
+
+/**
+ * a benchmark of the size and the encode/decode costs of the standard serialization versus the compact one of
+ * {@link com.hendrix.triorm.TriDatabase.Builder#compactSerialization(Class)}, on a few typical models.
+ * it does not touch a database, the class dictionary is kept in memory, so it also runs on a desktop {@code JVM}:
+ *
+ * <pre>
+ * {@code Log.d("bench", SerializationBenchmark.run(10000));}
+ * </pre>
+ *
+ * @author Tomer Shalev
+ */
+@SuppressWarnings("UnusedDeclaration")
+public final class SerializationBenchmark {
+
+    private SerializationBenchmark() {
+    }
+
+    public enum Role {
+        ADMIN, MEMBER, GUEST
+    }
+
+    /**
+     * a user profile
+     */
+    public static class BenchUser extends TriData {
+        private static final long serialVersionUID = 0L;
+
+        public String             firstName = null;
+        public String             lastName  = null;
+        public String             email     = null;
+        public int                age       = 0;
+        public boolean            verified  = false;
+        public long               lastSeen  = 0L;
+        public Role               role      = Role.MEMBER;
+        public ArrayList<String>  tags      = new ArrayList<>();
+
+        public BenchUser() {
+        }
+    }
+
+    /**
+     * an analytics event with a few properties
+     */
+    public static class BenchEvent extends TriData {
+        private static final long serialVersionUID = 0L;
+
+        public String                   name        = null;
+        public double                   value       = 0;
+        public HashMap<String, String>  properties  = new HashMap<>();
+
+        public BenchEvent() {
+        }
+    }
+
+    /**
+     * a location sample
+     */
+    public static class BenchLocation extends TriData {
+        private static final long serialVersionUID = 0L;
+
+        public double latitude  = 0;
+        public double longitude = 0;
+        public float  accuracy  = 0;
+
+        public BenchLocation() {
+        }
+    }
+
+    /**
+     * the result of a single model
+     */
+    public static class Result {
+        public String model;
+        /**
+         * average size of a standard/compact row
+         */
+        public int    standardBytes;
+        public int    compactBytes;
+        /**
+         * average time to serialize a standard/compact row
+         */
+        public long   standardEncodeNanos;
+        public long   compactEncodeNanos;
+        /**
+         * average time to de-serialize a standard/compact row
+         */
+        public long   standardDecodeNanos;
+        public long   compactDecodeNanos;
+
+        @Override
+        public String toString() {
+            return model + ":: (bytes->" + standardBytes + "/" + compactBytes + " " + percent(compactBytes, standardBytes)
+                    + ", encode->" + standardEncodeNanos / 1000 + "/" + compactEncodeNanos / 1000 + "us " + percent(compactEncodeNanos, standardEncodeNanos)
+                    + ", decode->" + standardDecodeNanos / 1000 + "/" + compactDecodeNanos / 1000 + "us " + percent(compactDecodeNanos, standardDecodeNanos) + ")";
+        }
+
+        private static String percent(long compact, long standard) {
+            return (standard == 0) ? "" : (compact - standard) * 100 / standard + "%";
+        }
+    }
+
+    /**
+     * benchmark all of the models, standard/compact
+     *
+     * @param rows amount of rows per model
+     *
+     * @return a printable report
+     */
+    public static String run(int rows) {
+        StringBuilder report = new StringBuilder("SerializationBenchmark:: (rows->" + rows + ", standard/compact)");
+        Random        random = new Random(rows);
+
+        ArrayList<BenchUser>      users     = new ArrayList<>();
+        ArrayList<BenchEvent>     events    = new ArrayList<>();
+        ArrayList<BenchLocation>  locations = new ArrayList<>();
+
+        for (int ix = 0; ix < rows; ix++) {
+            BenchUser user  = new BenchUser();
+
+            user.firstName  = "first" + random.nextInt(1000);
+            user.lastName   = "last" + random.nextInt(1000);
+            user.email      = user.firstName + "@example.com";
+            user.age        = 18 + random.nextInt(60);
+            user.verified   = random.nextBoolean();
+            user.lastSeen   = System.currentTimeMillis() - random.nextInt(1000000);
+            user.role       = Role.values()[random.nextInt(Role.values().length)];
+            user.tags.addAll(Arrays.asList("tag" + random.nextInt(10), "tag" + random.nextInt(10)));
+            user.setType("user");
+
+            users.add(user);
+
+            BenchEvent event  = new BenchEvent();
+
+            event.name        = "screen_view";
+            event.value       = random.nextDouble();
+            event.properties.put("screen", "screen" + random.nextInt(20));
+            event.properties.put("session", String.valueOf(random.nextLong()));
+            event.setType("analytics");
+
+            events.add(event);
+
+            BenchLocation location = new BenchLocation();
+
+            location.latitude   = random.nextDouble() * 180 - 90;
+            location.longitude  = random.nextDouble() * 360 - 180;
+            location.accuracy   = random.nextFloat() * 50;
+
+            locations.add(location);
+        }
+
+        report.append('\n').append(run("user", users));
+        report.append('\n').append(run("event", events));
+        report.append('\n').append(run("location", locations));
+
+        return report.toString();
+    }
+
+    /**
+     * benchmark a single model, the first pass warms up and is not measured
+     *
+     * @param model the name of the model
+     * @param data  the rows
+     * @param <T>   the model type
+     *
+     * @return the {@link Result}
+     */
+    public static <T extends TriData> Result run(String model, ArrayList<T> data) {
+        MemoryDictionary  dictionary  = new MemoryDictionary();
+        Result            result      = new Result();
+        byte[][]          standard    = new byte[data.size()][];
+        byte[][]          compact     = new byte[data.size()][];
+        int               count       = Math.max(1, data.size());
+
+        result.model = model;
+
+        for (int pass = 0; pass < 2; pass++) {
+            long standardBytes = 0, compactBytes = 0;
+            long start         = System.nanoTime();
+
+            for (int ix = 0; ix < data.size(); ix++)
+                standardBytes += (standard[ix] = SSerialize.serializeToByteArray(data.get(ix))).length;
+
+            result.standardEncodeNanos  = (System.nanoTime() - start) / count;
+
+            start                       = System.nanoTime();
+
+            for (int ix = 0; ix < data.size(); ix++)
+                compactBytes += (compact[ix] = SSerialize.serializeToByteArray(data.get(ix), dictionary)).length;
+
+            result.compactEncodeNanos   = (System.nanoTime() - start) / count;
+
+            start                       = System.nanoTime();
+
+            for (byte[] blob : standard)
+                SSerialize.deserialize(blob);
+
+            result.standardDecodeNanos  = (System.nanoTime() - start) / count;
+
+            start                       = System.nanoTime();
+
+            for (byte[] blob : compact)
+                SSerialize.deserialize(blob, dictionary);
+
+            result.compactDecodeNanos   = (System.nanoTime() - start) / count;
+
+            result.standardBytes        = (int) (standardBytes / count);
+            result.compactBytes         = (int) (compactBytes / count);
+        }
+
+        return result;
+    }
+
+    /**
+     * a class dictionary that is kept in memory only
+     */
+    private static final class MemoryDictionary implements IClassDictionary {
+        private final ArrayList<ObjectStreamClass>                  _descriptors  = new ArrayList<>();
+        private final HashMap<String, Integer>                      _ids          = new HashMap<>();
+        private final IdentityHashMap<ObjectStreamClass, Integer>   _local        = new IdentityHashMap<>();
+
+        @Override
+        public synchronized int idOf(ObjectStreamClass descriptor) throws IOException {
+            Integer id = _local.get(descriptor);
+
+            if(id != null)
+                return id;
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ObjectOutputStream    oos  = new ObjectOutputStream(baos);
+
+            oos.writeObject(descriptor);
+            oos.close();
+
+            String key = Arrays.toString(baos.toByteArray());
+
+            id = _ids.get(key);
+
+            if(id == null) {
+                id = _descriptors.size();
+
+                try {
+                    // kept as read back, like a dictionary that is persisted
+                    _descriptors.add((ObjectStreamClass) new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray())).readObject());
+                } catch (ClassNotFoundException e) {
+                    throw new InvalidClassException(descriptor.getName());
+                }
+
+                _ids.put(key, id);
+            }
+
+            _local.put(descriptor, id);
+
+            return id;
+        }
+
+        @Override
+        public synchronized ObjectStreamClass descriptorOf(int id) throws IOException {
+            if(id < 0 || id >= _descriptors.size())
+                throw new InvalidClassException("unknown class reference " + id);
+
+            return _descriptors.get(id);
+        }
+    }
+
+}
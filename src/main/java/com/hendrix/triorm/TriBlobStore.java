@@ -0,0 +1,305 @@
+package com.hendrix.triorm;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * the files of the blobs of a {@link TriTable} that are too large to be kept in it's rows, in a directory beside
+ * the database file. the {@code data} column of such a row holds a reference, {@link #MAGIC} followed by the name
+ * of the file. every blob gets a new file, so a rolled back write never changes a file another row refers to.
+ * <p/>
+ * files whose rows are gone are deleted by {@link #sweep(Set)}, while the caller holds a transaction, so no write
+ * is in progress, and files that were written but not inserted yet are {@link #release(byte[]) pending}.
+ * the full sweep lists every reference of the table, so it only runs when the table is opened. after that the writes
+ * keep the files that may have lost their row as {@link #candidate(String, byte[]) candidates}, and only those are
+ * checked and {@link #delete(Collection) deleted}.
+ *
+ * @see TriDatabase.Builder#externalBlobs(Class, int)
+ *
+ * @author Tomer Shalev
+ */
+final class TriBlobStore
+{
+    /**
+     * the first bytes of a reference, serialized data starts with {@code 0xACED} or {@link com.hendrix.triorm.utils.SSerialize#COMPACT_MAGIC}
+     */
+    static final byte[]           MAGIC                 = new byte[] { 'T', 'X' };
+
+    /**
+     * the maximal length of a reference
+     */
+    static final int              MAX_REFERENCE_LENGTH  = 64;
+
+    private static final String   SUFFIX                = ".blob";
+    private static final Charset  UTF_8                 = Charset.forName("UTF-8");
+
+    private final File            _directory;
+
+    /**
+     * the names of the files that were written, and whose rows were not inserted yet
+     */
+    private final Set<String>     _pending              = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * the names of the files that may have lost their row, mapped to the identifier of the row that referred to them
+     */
+    private final ConcurrentHashMap<String, String> _candidates = new ConcurrentHashMap<>();
+
+    /**
+     * does the directory hold any file, {@code null} until it was listed
+     */
+    private volatile Boolean      _hasFiles             = null;
+
+    /**
+     * @param directory the directory of the files of the table
+     */
+    TriBlobStore(File directory)
+    {
+        _directory = directory;
+    }
+
+    /**
+     * query a value of the {@code data} column
+     *
+     * @param blob the value
+     *
+     * @return {@code true} if it is a reference of a file
+     */
+    static boolean isReference(byte[] blob)
+    {
+        if(blob == null || blob.length <= MAGIC.length || blob.length > MAX_REFERENCE_LENGTH)
+            return false;
+
+        for (int ix = 0; ix < MAGIC.length; ix++) {
+            if(blob[ix] != MAGIC[ix])
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * write a blob into a new file, that is pending until it is {@link #release(byte[]) released}.
+     * the file is synced, so it is durable before the row that refers to it is committed.
+     *
+     * @param blob the blob
+     *
+     * @return the reference to keep in the {@code data} column
+     *
+     * @throws IOException if the file could not be written
+     */
+    byte[] write(byte[] blob) throws IOException
+    {
+        String name = UUID.randomUUID().toString() + SUFFIX;
+        File   file = new File(_directory, name);
+
+        if(!_directory.isDirectory() && !_directory.mkdirs() && !_directory.isDirectory())
+            throw new IOException("TriOrm - could not create " + _directory);
+
+        _pending.add(name);
+
+        FileOutputStream out = new FileOutputStream(file);
+
+        try {
+            FileChannel channel = out.getChannel();
+            ByteBuffer  buffer  = ByteBuffer.wrap(blob);
+
+            while(buffer.hasRemaining())
+                channel.write(buffer);
+
+            out.getFD().sync();
+        } catch (IOException e) {
+            _pending.remove(name);
+
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+
+            throw e;
+        } finally {
+            out.close();
+        }
+
+        _hasFiles = true;
+
+        byte[] chars      = name.getBytes(UTF_8);
+        byte[] reference  = new byte[MAGIC.length + chars.length];
+
+        System.arraycopy(MAGIC, 0, reference, 0, MAGIC.length);
+        System.arraycopy(chars, 0, reference, MAGIC.length, chars.length);
+
+        return reference;
+    }
+
+    /**
+     * a file is not pending anymore, once the statement that inserted it's reference returned.
+     * the statement is committed, or rolled back, before the next sweep holds the transaction.
+     *
+     * @param reference the reference, ignored if it is not one
+     */
+    void release(byte[] reference)
+    {
+        if(isReference(reference))
+            _pending.remove(nameOf(reference));
+    }
+
+    /**
+     * the file of a reference may have lost it's row, because the row was replaced, deleted, or the write that
+     * inserted it may be rolled back. it is checked by the next sweep.
+     *
+     * @param id        the identifier of the row that referred to the file
+     * @param reference the reference, ignored if it is not one
+     */
+    void candidate(String id, byte[] reference)
+    {
+        if(id != null && isReference(reference))
+            _candidates.put(nameOf(reference), id);
+    }
+
+    /**
+     * take candidates out, to be checked
+     *
+     * @param max the maximal amount of candidates
+     *
+     * @return the names of the files, mapped to the identifiers of their rows
+     */
+    HashMap<String, String> takeCandidates(int max)
+    {
+        HashMap<String, String>              taken = new HashMap<>();
+        Iterator<Map.Entry<String, String>>  it    = _candidates.entrySet().iterator();
+
+        while(it.hasNext() && taken.size() < max) {
+            Map.Entry<String, String> entry = it.next();
+
+            taken.put(entry.getKey(), entry.getValue());
+            it.remove();
+        }
+
+        return taken;
+    }
+
+    /**
+     * return candidates that could not be checked
+     *
+     * @param candidates the names of the files, mapped to the identifiers of their rows
+     */
+    void restoreCandidates(Map<String, String> candidates)
+    {
+        _candidates.putAll(candidates);
+    }
+
+    /**
+     * map the file of a reference into memory
+     *
+     * @param reference the reference
+     *
+     * @return the read only content
+     *
+     * @throws IOException if the file could not be read
+     */
+    MappedByteBuffer map(byte[] reference) throws IOException
+    {
+        FileInputStream in = new FileInputStream(new File(_directory, nameOf(reference)));
+
+        try {
+            FileChannel channel = in.getChannel();
+
+            // the mapping outlives the channel
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return {@code true} if the directory may hold files that have to be swept
+     */
+    boolean hasFiles()
+    {
+        Boolean hasFiles = _hasFiles;
+
+        if(hasFiles == null) {
+            String[] names  = _directory.list();
+
+            _hasFiles       = hasFiles = (names != null && names.length > 0);
+        }
+
+        return hasFiles;
+    }
+
+    /**
+     * delete the files that are not referred to by any row, and are not pending.
+     * must be called while holding a transaction, after all of the references were read in it, so the
+     * candidates of the writes before it are settled as well.
+     *
+     * @param referenced the names of the files that rows refer to
+     *
+     * @return the amount of deleted files
+     */
+    int sweep(Set<String> referenced)
+    {
+        String[]  names   = _directory.list();
+        int       deleted = 0;
+
+        _candidates.clear();
+
+        if(names == null)
+            return 0;
+
+        for (String name : names) {
+            if(!name.endsWith(SUFFIX) || referenced.contains(name) || _pending.contains(name))
+                continue;
+
+            if(new File(_directory, name).delete())
+                deleted++;
+        }
+
+        _hasFiles = names.length > deleted || !_pending.isEmpty();
+
+        return deleted;
+    }
+
+    /**
+     * delete candidate files that no row refers to anymore, unless they are pending.
+     * must be called while holding the transaction that checked their rows.
+     *
+     * @param names the names of the files
+     *
+     * @return the amount of deleted files
+     */
+    int delete(Collection<String> names)
+    {
+        int deleted = 0;
+
+        for (String name : names) {
+            if(!_pending.contains(name) && new File(_directory, name).delete())
+                deleted++;
+        }
+
+        return deleted;
+    }
+
+    /**
+     * @param reference the reference
+     *
+     * @return the name of the file of a reference
+     */
+    static String nameOf(byte[] reference)
+    {
+        return new String(reference, MAGIC.length, reference.length - MAGIC.length, UTF_8);
+    }
+
+}
@@ -0,0 +1,307 @@
+package com.hendrix.triorm;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.hendrix.triorm.interfaces.IClassDictionary;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * the dictionary of the class descriptors of a {@link TriTable}, kept in a table shared by all of the tables of the
+ * database file, so every row of a compact table only holds a reference of every class descriptor.
+ * <p/>
+ * a descriptor is recorded by it's whole serialized form, so a class whose fields changed gets a new reference,
+ * and older rows are still decoded with the layout they were written with. references are never reused, and
+ * recorded descriptors are kept in memory, so a rolled back transaction records them again.
+ *
+ * @see TriDatabase.Builder#compactSerialization(Class)
+ *
+ * @author Tomer Shalev
+ */
+final class TriClassDictionary implements IClassDictionary
+{
+    /**
+     * the name of the dictionary table
+     */
+    static final String TABLE_NAME      = "triorm_classes";
+
+    static final String KEY_TABLE       = "table_name";
+    static final String KEY_ID          = "id";
+    static final String KEY_NAME        = "name";
+    static final String KEY_DESCRIPTOR  = "descriptor";
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private final TriTable<?> _table;
+
+    /**
+     * the recorded descriptors by their reference, {@code null} until loaded
+     */
+    private ArrayList<Entry>                                  _entries  = null;
+
+    /**
+     * the references by the serialized descriptors
+     */
+    private final HashMap<String, Integer>                    _ids      = new HashMap<>();
+
+    /**
+     * the references of the descriptors of the loaded classes, that are canonical per class
+     */
+    private final IdentityHashMap<ObjectStreamClass, Integer> _local    = new IdentityHashMap<>();
+
+    /**
+     * @param table the table, the database is read through {@link TriTable#database()}
+     */
+    TriClassDictionary(TriTable<?> table)
+    {
+        _table = table;
+    }
+
+    /**
+     * create the dictionary table if it does not exist
+     *
+     * @param db the database
+     */
+    static void create(SQLiteDatabase db)
+    {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + "("
+                   + KEY_TABLE      + " TEXT, "
+                   + KEY_ID         + " INTEGER, "
+                   + KEY_NAME       + " TEXT, "
+                   + KEY_DESCRIPTOR + " BLOB, "
+                   + "PRIMARY KEY (" + KEY_TABLE + ", " + KEY_ID + "))");
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * a new descriptor is recorded in a transaction of it's own, or of the caller, so the writers of the
+     * dictionary are serialized by the connection of the database.
+     */
+    @Override
+    public int idOf(ObjectStreamClass descriptor) throws IOException
+    {
+        load();
+
+        synchronized (this) {
+            Integer id = _local.get(descriptor);
+
+            if(id != null)
+                return id;
+        }
+
+        byte[]          bytes = encode(descriptor);
+        String          key   = new String(bytes, ISO_8859_1);
+        SQLiteDatabase  db    = _table.database();
+
+        try {
+            db.beginTransaction();
+
+            try {
+                Integer id;
+
+                synchronized (this) {
+                    id = _ids.get(key);
+                }
+
+                if(id == null) {
+                    id = record(db, descriptor.getName(), bytes);
+
+                    _table.onRollback(new Runnable() {
+                        @Override
+                        public void run() {
+                            restore();
+                        }
+                    });
+                }
+
+                synchronized (this) {
+                    _local.put(descriptor, id);
+                }
+
+                db.setTransactionSuccessful();
+
+                return id;
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLException e) {
+            throw new IOException("TriOrm - could not record the class " + descriptor.getName(), e);
+        }
+    }
+
+    @Override
+    public ObjectStreamClass descriptorOf(int id) throws IOException, ClassNotFoundException
+    {
+        Entry entry;
+
+        load();
+
+        synchronized (this) {
+            if(id < 0 || id >= _entries.size())
+                throw new InvalidClassException("TriOrm - unknown class reference " + id + " of table " + _table.TABLE_NAME());
+
+            entry = _entries.get(id);
+        }
+
+        if(entry.descriptor == null) {
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(entry.bytes));
+
+            try {
+                entry.descriptor = (ObjectStreamClass) ois.readObject();
+            } finally {
+                ois.close();
+            }
+        }
+
+        return entry.descriptor;
+    }
+
+    /**
+     * record the descriptors that are known in memory again, after a transaction that recorded some of them
+     * was rolled back, so rows that were already encoded with them can be decoded.
+     */
+    void restore()
+    {
+        ArrayList<Entry> entries;
+
+        synchronized (this) {
+            if(_entries == null)
+                return;
+
+            entries = new ArrayList<>(_entries);
+        }
+
+        SQLiteDatabase db = _table.database();
+
+        db.beginTransaction();
+
+        try {
+            for (int ix = 0; ix < entries.size(); ix++)
+                insert(db, ix, entries.get(ix), SQLiteDatabase.CONFLICT_IGNORE);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * record a new descriptor, the caller holds a transaction
+     *
+     * @return the reference
+     */
+    private int record(SQLiteDatabase db, String name, byte[] bytes)
+    {
+        Entry entry = new Entry(name, bytes);
+        int   id;
+
+        synchronized (this) {
+            id = _entries.size();
+        }
+
+        insert(db, id, entry, SQLiteDatabase.CONFLICT_ABORT);
+
+        synchronized (this) {
+            _entries.add(entry);
+            _ids.put(new String(bytes, ISO_8859_1), id);
+        }
+
+        return id;
+    }
+
+    private void insert(SQLiteDatabase db, int id, Entry entry, int conflict)
+    {
+        ContentValues values = new ContentValues();
+
+        values.put(KEY_TABLE,      _table.TABLE_NAME());
+        values.put(KEY_ID,         id);
+        values.put(KEY_NAME,       entry.name);
+        values.put(KEY_DESCRIPTOR, entry.bytes);
+
+        if(db.insertWithOnConflict(TABLE_NAME, null, values, conflict) == -1 && conflict != SQLiteDatabase.CONFLICT_IGNORE)
+            throw new SQLException("TriOrm - could not record class reference " + id);
+    }
+
+    /**
+     * load the recorded descriptors on first use, they are only de-serialized when they are read.
+     * the monitor is not held while reading, since the connection may be held by a transaction that waits for it.
+     */
+    private void load()
+    {
+        synchronized (this) {
+            if(_entries != null)
+                return;
+        }
+
+        ArrayList<Entry>  entries = new ArrayList<>();
+        SQLiteDatabase    db      = _table.database();
+        Cursor            cursor  = db.query(TABLE_NAME, new String[] { KEY_ID, KEY_NAME, KEY_DESCRIPTOR }, KEY_TABLE + " = ?",
+                                             new String[] { _table.TABLE_NAME() }, null, null, KEY_ID + " ASC");
+
+        try {
+            while(cursor.moveToNext()) {
+                // references are dense
+                if(cursor.getInt(0) != entries.size())
+                    throw new SQLException("TriOrm - corrupted class dictionary of table " + _table.TABLE_NAME());
+
+                entries.add(new Entry(cursor.getString(1), cursor.getBlob(2)));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        synchronized (this) {
+            if(_entries != null)
+                return;
+
+            for (int ix = 0; ix < entries.size(); ix++)
+                _ids.put(new String(entries.get(ix).bytes, ISO_8859_1), ix);
+
+            _entries = entries;
+        }
+    }
+
+    /**
+     * serialize a descriptor in the standard form, together with the descriptors of it's super classes
+     */
+    private static byte[] encode(ObjectStreamClass descriptor) throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream    oos  = new ObjectOutputStream(baos);
+
+        oos.writeObject(descriptor);
+        oos.close();
+
+        return baos.toByteArray();
+    }
+
+    /**
+     * a recorded descriptor
+     */
+    private static final class Entry
+    {
+        final String              name;
+        final byte[]              bytes;
+        volatile ObjectStreamClass descriptor = null;
+
+        Entry(String name, byte[] bytes) {
+            this.name   = name;
+            this.bytes  = bytes;
+        }
+    }
+
+}
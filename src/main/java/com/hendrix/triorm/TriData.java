@@ -42,9 +42,13 @@ public abstract class TriData implements Serializable, IId {
         this(null);
     }
 
+    /**
+     * @param id the identifier, or {@code null} to generate a unique one with the generator
+     *           of {@link com.hendrix.triorm.TriOrm#setIdGenerator(com.hendrix.triorm.interfaces.IIdGenerator)}
+     */
     protected TriData(String id) {
         _time_created     = System.currentTimeMillis();
-        _id               = (id == null) ? String.valueOf(Math.abs(_time_created / 1000)) : id;
+        _id               = (id == null) ? TriOrm.nextId(getClass()) : id;
 
         //System.out.println(_id);
     }
@@ -2,10 +2,22 @@ package com.hendrix.triorm;
 
 import android.content.Context;
 
+import com.hendrix.triorm.exceptions.TableNotExistException;
+import com.hendrix.triorm.interfaces.IMigration;
+import com.hendrix.triorm.interfaces.IPrefetch;
+import com.hendrix.triorm.interfaces.ISnapshotListener;
+import com.hendrix.triorm.query.TriQuery;
+import com.hendrix.triorm.utils.SExecutors;
 import com.hendrix.triorm.utils.SReflection;
 import com.hendrix.triorm.utils.SReflection.Meta;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * immutable 3D Database.
@@ -16,8 +28,16 @@ import java.util.HashMap;
  *
  * <ul>
  *      <li>use {@link #getTable(Class)} to get the table by id
+ *      <li>use {@link #runInTransaction(Runnable)} to write to many tables in a single transaction
+ *      <li>use {@link #warmUp()} to open and create the tables in the background
+ *      <li>use {@link Builder#prefetch(Class, IPrefetch)} to prefetch hot queries in the background, and {@link #cancelPrefetch()} to stop it
+ *      <li>use {@link #snapshot(File)} to copy the database while it is in use
+ *      <li>use {@link #getStartupTimings()} to get the startup timing breakdown
  * </ul>
  *
+ * tables are registered without any I/O, every table opens the database and creates itself on first use.
+ * all of the tables share a single open helper, and therefore a single connection.
+ *
  * @see TriDatabase.Builder
  *
  * @author Tomer Shalev
@@ -41,14 +61,177 @@ public class TriDatabase
 
     private HashMap<String, TriTable>           _mapTables 	= null;
 
+    /**
+     * the open helper shared by all of the tables
+     */
+    private TriOpenHelper                       _helper     = null;
+
+    /**
+     * the time it took to register every table
+     */
+    private LinkedHashMap<String, Long>         _mapRegisterNanos = null;
+    /**
+     * the time it took to build the database
+     */
+    private long                                _buildNanos = 0L;
+
+    /**
+     * the prefetch of the hot queries of the {@link Builder}
+     */
+    private ArrayList<Future<Boolean>>          _prefetches = new ArrayList<>();
+
     private TriDatabase(Builder builder)
     {
+        long start  = System.nanoTime();
+
         _version    = builder._version;
         _ctx        = builder._ctx;
         _dbName     = builder._dbName;
         _mapTables  = builder._mapTables;
 
+        _mapRegisterNanos = builder._mapRegisterNanos;
+
+        _helper     = new TriOpenHelper(_ctx, _dbName, _version, builder._pageSize);
+
+        for (TriTable<?> table : _mapTables.values())
+            table.attach(_helper);
+
         TriOrm.instance().addTables(_mapTables);
+
+        if(builder._flagWarmUp)
+            warmUp();
+
+        for (TriQuery<?> query : builder._prefetches)
+            _prefetches.add(query.prefetch());
+
+        schedulePurges();
+
+        _buildNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * run a unit of work in a single transaction. all of the tables of the database share one connection,
+     * so every save, update and delete on them from the calling thread joins the transaction, and is committed
+     * together with a single commit, or rolled back together if the work throws. transactions may be nested.
+     *
+     * @param work the unit of work
+     */
+    public void runInTransaction(Runnable work)
+    {
+        _helper.runInTransaction(work);
+    }
+
+    /**
+     * take a consistent point in time copy of the database into another file, while it is in use.
+     * the rows are copied incrementally in small steps that yield to foreground writers. this blocks,
+     * take it off the main thread. the files of {@link Builder#externalBlobs(Class, int) external blobs}
+     * are not copied, only their references are, use {@link TriTable#exportTo(java.nio.channels.WritableByteChannel)} for such tables.
+     *
+     * @param file the snapshot file, it is overwritten
+     *
+     * @return the completed {@link TriSnapshot}, with it's throughput
+     *
+     * @see #snapshot(File, ISnapshotListener)
+     */
+    public TriSnapshot snapshot(File file)
+    {
+        return snapshot(file, null);
+    }
+
+    /**
+     * take a consistent point in time copy of the database into another file, while it is in use,
+     * and report the progress after every step.
+     *
+     * @param file      the snapshot file, it is overwritten
+     * @param listener  the listener of the progress, may be {@code null}
+     *
+     * @return the completed {@link TriSnapshot}, with it's throughput
+     *
+     * @see TriSnapshot
+     */
+    public synchronized TriSnapshot snapshot(File file, ISnapshotListener listener)
+    {
+        // the schema must not change while the triggers of the snapshot are in place
+        for (TriTable<?> table : _mapTables.values())
+            table.open();
+
+        return TriSnapshot.take(_helper, file, listener);
+    }
+
+    /**
+     * close the database of all of the tables, it is re-opened on next use
+     */
+    public void close()
+    {
+        _helper.close();
+    }
+
+    /**
+     * open the database and create all of the tables on the background thread, instead of on first use.
+     *
+     * @return a {@link Future} that completes when all of the tables were opened
+     */
+    public Future<?> warmUp()
+    {
+        return SExecutors.background().submit(new Runnable() {
+            @Override
+            public void run() {
+                for (TriTable<?> table : _mapTables.values())
+                    table.open();
+            }
+        });
+    }
+
+    /**
+     * cancel the prefetch of the hot queries that did not complete yet, e.g. when the user navigated elsewhere.
+     * a running prefetch stops at the next row, and the results that were already prefetched stay cached.
+     *
+     * @see Builder#prefetch(Class, IPrefetch)
+     */
+    public void cancelPrefetch()
+    {
+        for (Future<Boolean> prefetch : _prefetches)
+            prefetch.cancel(true);
+    }
+
+    /**
+     * schedule the periodic purging of the tables that have a {@link TriRetention} on the purge thread.
+     * the first purge happens after one interval, so it never competes with the startup.
+     */
+    private void schedulePurges()
+    {
+        for (final TriTable<?> table : _mapTables.values()) {
+            final TriRetention retention = table.getRetention();
+
+            if(retention == null)
+                continue;
+
+            SExecutors.purge().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        table.purge();
+                    } catch (RuntimeException e) {
+                        // counted by the retention, an exception would cancel the schedule
+                    }
+                }
+            }, retention.interval(), retention.interval(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * get the startup timing breakdown of the database
+     *
+     * @return {@link Timings}
+     */
+    public Timings getStartupTimings()
+    {
+        LinkedHashMap<String, Long> mapOpenNanos = new LinkedHashMap<>();
+
+        for (TriTable<?> table : _mapTables.values())
+            mapOpenNanos.put(table.TABLE_NAME(), table.openNanos());
+
+        return new Timings(_mapRegisterNanos, _buildNanos, mapOpenNanos);
     }
 
     /**
@@ -81,6 +264,64 @@ public class TriDatabase
         return _version;
     }
 
+    /**
+     * a startup timing breakdown of a {@link TriDatabase}, all times are in nanoseconds
+     *
+     * @author Tomer Shalev
+     */
+    public static class Timings
+    {
+        private final Map<String, Long> _mapRegisterNanos;
+        private final long              _buildNanos;
+        private final Map<String, Long> _mapOpenNanos;
+
+        private Timings(Map<String, Long> mapRegisterNanos, long buildNanos, Map<String, Long> mapOpenNanos) {
+            _mapRegisterNanos = mapRegisterNanos;
+            _buildNanos       = buildNanos;
+            _mapOpenNanos     = mapOpenNanos;
+        }
+
+        /**
+         * @return the time it took to register every table in the builder, by table name
+         */
+        public Map<String, Long> registerNanos() {
+            return _mapRegisterNanos;
+        }
+
+        /**
+         * @return the time it took to build the database
+         */
+        public long buildNanos() {
+            return _buildNanos;
+        }
+
+        /**
+         * @return the time it took every table to open and create itself by table name,
+         *         {@code -1} for tables that were not opened yet
+         */
+        public Map<String, Long> openNanos() {
+            return _mapOpenNanos;
+        }
+
+        /**
+         * @return a printable representation of the breakdown
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("TriDatabase.Timings:: (build->" + _buildNanos / 1000 + "us");
+
+            for (Map.Entry<String, Long> entry : _mapRegisterNanos.entrySet()) {
+                Long open = _mapOpenNanos.get(entry.getKey());
+
+                sb.append(", ").append(entry.getKey())
+                  .append("->register ").append(entry.getValue() / 1000).append("us")
+                  .append(" open ").append((open == null || open == -1L) ? "-" : (open / 1000) + "us");
+            }
+
+            return sb.append(")").toString();
+        }
+    }
+
     /**
      * builder for immutable controller for {@link TriDatabase}
      *
@@ -91,8 +332,12 @@ public class TriDatabase
         private Context _ctx        = null;
         private String  _dbName     = null;
         private int     _version    = 1;
+        private boolean _flagWarmUp = false;
+        private int     _pageSize   = 0;
 
-        private HashMap<String, TriTable> _mapTables 	= null;
+        private HashMap<String, TriTable>   _mapTables 	      = null;
+        private LinkedHashMap<String, Long> _mapRegisterNanos = null;
+        private ArrayList<TriQuery<?>>      _prefetches       = new ArrayList<>();
 
         /**
          * @param ctx a context
@@ -100,7 +345,8 @@ public class TriDatabase
         public Builder(Context ctx) {
             _ctx = ctx;
 
-            _mapTables = new HashMap<>();
+            _mapTables        = new HashMap<>();
+            _mapRegisterNanos = new LinkedHashMap<>();
         }
 
         /**
@@ -134,6 +380,33 @@ public class TriDatabase
             return this;
         }
 
+        /**
+         * set the page size of the database file. it only takes effect when the file is created.
+         * requires Jelly Bean.
+         *
+         * @param pageSize the page size in bytes, a power of two between {@code 512} and {@code 65536}
+         *
+         * @see TriDatabase.Builder
+         */
+        public Builder pageSize(int pageSize) {
+            _pageSize = pageSize;
+
+            return this;
+        }
+
+        /**
+         * open the database and create all of the tables on the background thread once it is built,
+         * instead of on first use.
+         *
+         * @see TriDatabase#warmUp()
+         * @see TriDatabase.Builder
+         */
+        public Builder warmUp() {
+            _flagWarmUp = true;
+
+            return this;
+        }
+
         /**
          * set the name of the database.
          * this is optional if you are using {@link #addTable(Class)}, which forces the usage of
@@ -161,16 +434,22 @@ public class TriDatabase
          *
          * @deprecated not really deprecated, but I advocate using {@link #addTable(Class)} with {@link com.hendrix.triorm.annotations.TriTable} class annotations.
          */
+        @Deprecated
         public <T extends TriData> Builder addTable(String tableName, Class<T> type)
         {
             if(_mapTables.containsKey(tableName))
                 return this;
 
+            long start = System.nanoTime();
+
             String uniqueClassName = type.getName();
 
-            TriTable<T> triTable = new TriTable<>(_ctx, _dbName, tableName, _version);
+            TriTable<T> triTable = new TriTable<>(_ctx, _dbName, tableName, _version, null);
+
+            triTable.setDataType(type);
 
             _mapTables.put(uniqueClassName, triTable);
+            _mapRegisterNanos.put(tableName, System.nanoTime() - start);
 
             return this;
         }
@@ -191,6 +470,28 @@ public class TriDatabase
          */
         public <T extends TriData> Builder addTable(Class<T> type)
         {
+            return addTable(type, null);
+        }
+
+        /**
+         * add a table with a migration to the database if it was not already added in the past using
+         * {@link com.hendrix.triorm.annotations.TriTable} annotation.
+         * when the {@link #Version(int)} is bumped, the rows of the table are kept and every one of them is
+         * transformed by the migration. make sure to set the version before adding the tables.
+         *
+         * @param type      the Class type of the object to store, must implement {@link java.io.Serializable}
+         * @param migration the transform of every row, may be {@code null} to keep the rows as is
+         * @param <T>       the Class type of the object to store, must implement {@link java.io.Serializable}
+         *
+         * @see com.hendrix.triorm.interfaces.IMigration
+         * @see TriDatabase.Builder
+         *
+         * @throws java.lang.RuntimeException if meta database name is different from current database name
+         */
+        public <T extends TriData> Builder addTable(Class<T> type, IMigration<T> migration)
+        {
+            long start = System.nanoTime();
+
             SReflection.Meta meta = SReflection.extractMetadata(type);
 
             // guaranteed uniqueness because of packages
@@ -201,13 +502,225 @@ public class TriDatabase
 
             validateDataBaseName(meta);
 
-            TriTable<T> triTable = new TriTable<>(_ctx, meta.getDbName(), meta.getTableName(), _version);
+            TriTable<T> triTable = new TriTable<>(_ctx, meta.getDbName(), meta.getTableName(), _version, migration);
+
+            triTable.setDataType(type);
+            triTable.setLayout(meta.getLayout());
+            triTable.setPartition(meta.getPartition());
+
+            if(meta.getMaxAge() > 0 || meta.getMaxRows() > 0)
+                triTable.setRetention(new TriRetention(meta.getMaxAge(), meta.getMaxRows()));
 
             _mapTables.put(uniqueClassName, triTable);
+            _mapRegisterNanos.put(meta.getTableName(), System.nanoTime() - start);
+
+            return this;
+        }
+
+        /**
+         * set the retention policy of a table that was already added, expired data is purged
+         * periodically on a background thread of it's own.
+         *
+         * @param type      the Class type of the table
+         * @param retention the {@link TriRetention}, overrides the one of the {@link com.hendrix.triorm.annotations.TriTable} annotation
+         * @param <T>       the Class type of the table
+         *
+         * @see TriDatabase.Builder
+         *
+         * @throws com.hendrix.triorm.exceptions.TableNotExistException if the table was not added
+         */
+        public <T extends TriData> Builder retention(Class<T> type, TriRetention retention)
+        {
+            tableOf(type).setRetention(retention);
+
+            return this;
+        }
+
+        /**
+         * set the physical layout of a table that was already added. it only applies when the table is created.
+         *
+         * @param type      the Class type of the table
+         * @param layout    the {@link TriTable.Layout}, overrides the one of the {@link com.hendrix.triorm.annotations.TriTable} annotation
+         * @param <T>       the Class type of the table
+         *
+         * @see TriDatabase.Builder
+         *
+         * @throws com.hendrix.triorm.exceptions.TableNotExistException if the table was not added
+         */
+        public <T extends TriData> Builder layout(Class<T> type, TriTable.Layout layout)
+        {
+            tableOf(type).setLayout(layout);
+
+            return this;
+        }
+
+        /**
+         * partition a table that was already added by the period of it's {@code time_created}, so queries over a window
+         * of time only read the overlapping partitions, and the retention drops whole partitions.
+         * an existing table moves it's rows into the partitions when it is opened.
+         *
+         * @param type      the Class type of the table
+         * @param partition the {@link TriTable.Partition}, overrides the one of the {@link com.hendrix.triorm.annotations.TriTable} annotation
+         * @param <T>       the Class type of the table
+         *
+         * @see TriDatabase.Builder
+         *
+         * @throws com.hendrix.triorm.exceptions.TableNotExistException if the table was not added
+         */
+        public <T extends TriData> Builder partition(Class<T> type, TriTable.Partition partition)
+        {
+            tableOf(type).setPartition(partition);
+
+            return this;
+        }
+
+        /**
+         * cache the results of the queries of a table that was already added in memory, so a repeated query is a
+         * memory lookup as long as the table was not written. every write to the table invalidates it's cached results.
+         *
+         * @param type      the Class type of the table
+         * @param maxBytes  the maximal estimated size of the cached results in bytes
+         * @param <T>       the Class type of the table
+         *
+         * @see com.hendrix.triorm.query.TriQueryCache
+         * @see TriDatabase.Builder
+         *
+         * @throws com.hendrix.triorm.exceptions.TableNotExistException if the table was not added
+         */
+        public <T extends TriData> Builder queryCache(Class<T> type, int maxBytes)
+        {
+            tableOf(type).setQueryCache(maxBytes);
+
+            return this;
+        }
+
+        /**
+         * skip the saves and updates of a table that was already added, whose data did not change since it was last
+         * written. a hash of the serialized data is kept in a column, and compared with an indexed read instead of
+         * writing and syncing the row again. writes of raw {@code SQL} to the {@code data} column must clear it.
+         *
+         * @param type      the Class type of the table
+         * @param <T>       the Class type of the table
+         *
+         * @see TriTable#skippedWrites()
+         * @see TriDatabase.Builder
+         *
+         * @throws com.hendrix.triorm.exceptions.TableNotExistException if the table was not added
+         */
+        public <T extends TriData> Builder dirtyChecking(Class<T> type)
+        {
+            tableOf(type).setDirtyChecking(true);
+
+            return this;
+        }
+
+        /**
+         * prefetch a hot query of a table that was already added on the low priority background thread once the
+         * database is built, after it was {@link #warmUp() warmed up}. with a {@link #queryCache(Class, int) query cache}
+         * the result is cached, so the same query is answered from memory, otherwise the pages of it's rows are read.
+         * queries are prefetched in the order they were added.
+         *
+         * @param type      the Class type of the table
+         * @param prefetch  describes the query
+         * @param <T>       the Class type of the table
+         *
+         * @see TriDatabase#cancelPrefetch()
+         * @see TriTable#prefetch(TriQuery)
+         * @see TriDatabase.Builder
+         *
+         * @throws com.hendrix.triorm.exceptions.TableNotExistException if the table was not added
+         */
+        public <T extends TriData> Builder prefetch(Class<T> type, IPrefetch<T> prefetch)
+        {
+            TriQuery.Builder<T> builder = new TriQuery.Builder<>(tableOf(type));
+
+            prefetch.query(builder);
+
+            _prefetches.add(builder.build());
+
+            return this;
+        }
+
+        /**
+         * serialize the data of a table that was already added against a dictionary of class descriptors, that is kept once
+         * per table, so every row holds a small reference instead of the names and fields of all of it's classes.
+         * existing rows of the standard form are still read, and are re-encoded when they are saved again, or migrated.
+         *
+         * @param type      the Class type of the table
+         * @param <T>       the Class type of the table
+         *
+         * @see TriDatabase.Builder
+         *
+         * @throws com.hendrix.triorm.exceptions.TableNotExistException if the table was not added
+         */
+        public <T extends TriData> Builder compactSerialization(Class<T> type)
+        {
+            tableOf(type).setCompactSerialization(true);
+
+            return this;
+        }
+
+        /**
+         * keep the blobs of a table that was already added, that are larger than a threshold, in files beside the database
+         * file, with only a reference in their rows, so large objects do not bloat the database, or overflow the cursor
+         * windows of queries. the files are read back through memory mappings, and are deleted shortly after their rows.
+         * exports hold the blobs themselves.
+         *
+         * @param type      the Class type of the table
+         * @param threshold the size in bytes of a serialized object above which it is kept in a file, {@code 0} to keep all of them in the rows
+         * @param <T>       the Class type of the table
+         *
+         * @see TriDatabase.Builder
+         *
+         * @throws com.hendrix.triorm.exceptions.TableNotExistException if the table was not added
+         */
+        public <T extends TriData> Builder externalBlobs(Class<T> type, int threshold)
+        {
+            tableOf(type).setExternalBlobs(threshold);
 
             return this;
         }
 
+        /**
+         * keep an in memory Bloom filter of the identifiers of a table that was already added, so
+         * {@link TriTable#exists(String)} answers definite misses without touching the database.
+         * the filter is built when the table is opened, and kept up to date on save and delete.
+         *
+         * @param type      the Class type of the table
+         * @param capacity  the expected amount of identifiers, the filter grows when the table is larger
+         * @param <T>       the Class type of the table
+         *
+         * @see TriDatabase.Builder
+         *
+         * @throws com.hendrix.triorm.exceptions.TableNotExistException if the table was not added
+         */
+        public <T extends TriData> Builder bloomFilter(Class<T> type, int capacity)
+        {
+            tableOf(type).setBloomFilter(capacity);
+
+            return this;
+        }
+
+        /**
+         * get a table that was already added
+         *
+         * @param type the Class type of the table
+         *
+         * @return the table
+         *
+         * @throws com.hendrix.triorm.exceptions.TableNotExistException if the table was not added
+         */
+        @SuppressWarnings("unchecked")
+        private <T extends TriData> TriTable<T> tableOf(Class<T> type)
+        {
+            TriTable<T> triTable = (TriTable<T>)_mapTables.get(type.getName());
+
+            if(triTable == null)
+                throw new TableNotExistException(type);
+
+            return triTable;
+        }
+
         /**
          * sets and validate the name of the database
          *
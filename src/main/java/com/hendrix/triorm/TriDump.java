@@ -0,0 +1,233 @@
+package com.hendrix.triorm;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * the streaming format of {@link TriTable#exportTo(WritableByteChannel)} and {@link TriTable#importFrom(ReadableByteChannel)}.
+ * <p/>
+ * a {@code TRID} magic and a format version, followed by length prefixed rows of
+ * {@code (id, type, time_created, data)}, where the data is the serialized blob as it is stored,
+ * and a {@code -1} terminator. all numbers are big endian, strings are {@code UTF-8}, and {@code -1}
+ * lengths stand for {@code null}.
+ *
+ * @author Tomer Shalev
+ */
+final class TriDump
+{
+    private static final byte[]   MAGIC       = new byte[] { 'T', 'R', 'I', 'D' };
+    private static final int      VERSION     = 1;
+    private static final int      BUFFER_SIZE = 64 * 1024;
+    private static final Charset  UTF_8       = Charset.forName("UTF-8");
+
+    private TriDump() {
+    }
+
+    /**
+     * writes rows into a channel through a buffer, large blobs are written directly
+     */
+    static final class Writer
+    {
+        private final WritableByteChannel _channel;
+        private final ByteBuffer          _buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        /**
+         * @param channel the channel, it is not closed
+         */
+        Writer(WritableByteChannel channel)
+        {
+            _channel = channel;
+
+            _buffer.put(MAGIC).putInt(VERSION);
+        }
+
+        /**
+         * write a row
+         *
+         * @param id          the identifier
+         * @param type        the type, may be {@code null}
+         * @param timeCreated the creation time
+         * @param data        the serialized data, may be {@code null}
+         *
+         * @throws IOException if the channel failed
+         */
+        void write(String id, String type, long timeCreated, byte[] data) throws IOException
+        {
+            putBytes(id.getBytes(UTF_8));
+            putBytes(type == null ? null : type.getBytes(UTF_8));
+
+            reserve(8);
+            _buffer.putLong(timeCreated);
+
+            putBytes(data);
+        }
+
+        /**
+         * write the terminator and flush, should be called once after the last row
+         *
+         * @throws IOException if the channel failed
+         */
+        void finish() throws IOException
+        {
+            reserve(4);
+            _buffer.putInt(-1);
+
+            flush();
+        }
+
+        private void putBytes(byte[] bytes) throws IOException
+        {
+            reserve(4);
+            _buffer.putInt(bytes == null ? -1 : bytes.length);
+
+            if(bytes == null)
+                return;
+
+            if(bytes.length <= _buffer.capacity()) {
+                reserve(bytes.length);
+                _buffer.put(bytes);
+
+                return;
+            }
+
+            flush();
+            writeFully(ByteBuffer.wrap(bytes));
+        }
+
+        private void reserve(int length) throws IOException
+        {
+            if(_buffer.remaining() < length)
+                flush();
+        }
+
+        private void flush() throws IOException
+        {
+            _buffer.flip();
+            writeFully(_buffer);
+            _buffer.clear();
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException
+        {
+            while(buffer.hasRemaining())
+                _channel.write(buffer);
+        }
+    }
+
+    /**
+     * reads the rows of a channel one by one through a buffer
+     */
+    static final class Reader
+    {
+        private final ReadableByteChannel _channel;
+        private final ByteBuffer          _buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        /**
+         * the current row
+         */
+        String  id;
+        String  type;
+        long    timeCreated;
+        byte[]  data;
+
+        /**
+         * @param channel the channel, it is not closed
+         *
+         * @throws IOException if the channel failed, or does not hold a dump
+         */
+        Reader(ReadableByteChannel channel) throws IOException
+        {
+            _channel = channel;
+
+            _buffer.flip();
+
+            for (byte b : MAGIC) {
+                require(1);
+
+                if(_buffer.get() != b)
+                    throw new IOException("TriOrm - not a table dump");
+            }
+
+            require(4);
+
+            int version = _buffer.getInt();
+
+            if(version != VERSION)
+                throw new IOException("TriOrm - unsupported table dump version " + version);
+        }
+
+        /**
+         * read the next row into the fields of the reader
+         *
+         * @return {@code false} when there are no more rows
+         *
+         * @throws IOException if the channel failed or the dump is truncated
+         */
+        boolean next() throws IOException
+        {
+            byte[] bytes = getBytes();
+
+            if(bytes == null)
+                return false;
+
+            id          = new String(bytes, UTF_8);
+
+            bytes       = getBytes();
+            type        = (bytes == null) ? null : new String(bytes, UTF_8);
+
+            require(8);
+            timeCreated = _buffer.getLong();
+
+            data        = getBytes();
+
+            return true;
+        }
+
+        private byte[] getBytes() throws IOException
+        {
+            require(4);
+
+            int length = _buffer.getInt();
+
+            if(length < -1)
+                throw new IOException("TriOrm - corrupted table dump");
+
+            if(length == -1)
+                return null;
+
+            byte[] bytes  = new byte[length];
+            int    offset = 0;
+
+            while(offset < length) {
+                if(!_buffer.hasRemaining())
+                    require(1);
+
+                int count = Math.min(_buffer.remaining(), length - offset);
+
+                _buffer.get(bytes, offset, count);
+                offset += count;
+            }
+
+            return bytes;
+        }
+
+        private void require(int length) throws IOException
+        {
+            while(_buffer.remaining() < length) {
+                _buffer.compact();
+
+                int count = _channel.read(_buffer);
+
+                _buffer.flip();
+
+                if(count == -1)
+                    throw new EOFException("TriOrm - truncated table dump");
+            }
+        }
+    }
+
+}
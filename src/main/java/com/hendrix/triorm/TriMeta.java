@@ -0,0 +1,143 @@
+package com.hendrix.triorm;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * book keeping of the schema version of every {@link TriTable} inside a database file.
+ * <p/>
+ * all tables of a database share one file, and therefore one {@code user_version}, so
+ * {@link android.database.sqlite.SQLiteOpenHelper#onUpgrade(SQLiteDatabase, int, int)} is only
+ * delivered to the first table that opens the file. this table keeps the version per table, as well as
+ * the progress of an interrupted migration.
+ *
+ * @author Tomer Shalev
+ */
+final class TriMeta {
+    /**
+     * the name of the meta table
+     */
+    static final String TABLE_NAME      = "triorm_meta";
+
+    /**
+     * the row holding the version of tables that existed before the meta table did
+     */
+    static final String KEY_LEGACY      = "*";
+
+    static final String KEY_TABLE       = "table_name";
+    static final String KEY_VERSION     = "version";
+    static final String KEY_LAST_ID     = "last_id";
+
+    private TriMeta() {
+    }
+
+    /**
+     * create the meta table if it does not exist
+     *
+     * @param db the database
+     */
+    static void create(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + "("
+                + KEY_TABLE   + " TEXT PRIMARY KEY, "
+                + KEY_VERSION + " INTEGER, "
+                + KEY_LAST_ID + " TEXT" + ")");
+    }
+
+    /**
+     * record the version of the tables that were written before any per table version was kept.
+     * only the oldest version is recorded.
+     *
+     * @param db            the database
+     * @param oldVersion    the version the database file had before the upgrade
+     */
+    static void recordLegacyVersion(SQLiteDatabase db, int oldVersion) {
+        create(db);
+
+        ContentValues values = new ContentValues();
+
+        values.put(KEY_TABLE,   KEY_LEGACY);
+        values.put(KEY_VERSION, oldVersion);
+
+        db.insertWithOnConflict(TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+    }
+
+    /**
+     * get the version of a table
+     *
+     * @param db        the database
+     * @param tableName the table name
+     *
+     * @return the version, or {@code -1} if it was never recorded
+     */
+    static int version(SQLiteDatabase db, String tableName) {
+        Cursor cursor = db.query(TABLE_NAME, new String[] { KEY_VERSION }, KEY_TABLE + " = ?", new String[] { tableName }, null, null, null);
+
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * get the last identifier that was migrated by an interrupted migration
+     *
+     * @param db        the database
+     * @param tableName the table name
+     *
+     * @return the last migrated identifier, or {@code null} if no migration is in progress
+     */
+    static String lastId(SQLiteDatabase db, String tableName) {
+        Cursor cursor = db.query(TABLE_NAME, new String[] { KEY_LAST_ID }, KEY_TABLE + " = ?", new String[] { tableName }, null, null, null);
+
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * set the version of a table, and clear any migration progress
+     *
+     * @param db        the database
+     * @param tableName the table name
+     * @param version   the version
+     */
+    static void setVersion(SQLiteDatabase db, String tableName, int version) {
+        ContentValues values = new ContentValues();
+
+        values.put(KEY_TABLE,   tableName);
+        values.put(KEY_VERSION, version);
+        values.putNull(KEY_LAST_ID);
+
+        db.insertWithOnConflict(TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * record the progress of a migration, should be called in the transaction of the migrated batch
+     *
+     * @param db        the database
+     * @param tableName the table name
+     * @param lastId    the last identifier that was migrated
+     */
+    static void setProgress(SQLiteDatabase db, String tableName, String lastId) {
+        ContentValues values = new ContentValues();
+
+        values.put(KEY_LAST_ID, lastId);
+
+        db.update(TABLE_NAME, values, KEY_TABLE + " = ?", new String[] { tableName });
+    }
+
+    /**
+     * forget a table that was dropped
+     *
+     * @param db        the database
+     * @param tableName the table name
+     */
+    static void remove(SQLiteDatabase db, String tableName) {
+        db.delete(TABLE_NAME, KEY_TABLE + " = ?", new String[] { tableName });
+    }
+
+}
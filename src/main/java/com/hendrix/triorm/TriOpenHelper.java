@@ -0,0 +1,171 @@
+package com.hendrix.triorm;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * the single open helper of a {@link TriDatabase}, shared by all of it's tables, so they all write through
+ * the same connection and can share transactions.
+ * tables create and migrate themselves on first use, so this only keeps the book keeping of the version.
+ *
+ * @see TriDatabase#runInTransaction(Runnable)
+ *
+ * @author Tomer Shalev
+ */
+final class TriOpenHelper extends SQLiteOpenHelper
+{
+    /**
+     * the page size of the database file, {@code 0} for the default
+     */
+    private final int _pageSize;
+
+    /**
+     * the transaction of {@link #runInTransaction(Runnable)} of the calling thread
+     */
+    private final ThreadLocal<Transaction> _transaction = new ThreadLocal<>();
+
+    /**
+     * the amount of snapshots that are being taken
+     */
+    private final AtomicInteger _snapshots = new AtomicInteger();
+
+    /**
+     * @param context       Android's context
+     * @param databaseName  name of the database to be created or loaded
+     * @param version       version number
+     * @param pageSize      the page size of a new database file, {@code 0} for the default
+     */
+    TriOpenHelper(Context context, String databaseName, int version, int pageSize)
+    {
+        super(context, databaseName, null, version);
+
+        _pageSize = pageSize;
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db)
+    {
+        super.onConfigure(db);
+
+        // only takes effect when the database file is created
+        if(_pageSize > 0)
+            db.setPageSize(_pageSize);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db)
+    {
+        // tables create themselves on first use
+    }
+
+    /**
+     * the rows are kept, only the old version is recorded, and every table migrates itself on first use.
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion)
+    {
+        TriMeta.recordLegacyVersion(db, oldVersion);
+    }
+
+    /**
+     * run a unit of work in a single, possibly nested, transaction
+     *
+     * @param work the unit of work
+     *
+     * @see TriDatabase#runInTransaction(Runnable)
+     */
+    void runInTransaction(Runnable work)
+    {
+        SQLiteDatabase  db          = getWritableDatabase();
+        Transaction     transaction = _transaction.get();
+
+        if(transaction == null)
+            _transaction.set(transaction = new Transaction());
+
+        transaction.depth++;
+
+        db.beginTransaction();
+
+        boolean success = false;
+
+        try {
+            work.run();
+
+            db.setTransactionSuccessful();
+
+            success = true;
+        } finally {
+            // a nested failure rolls back the outermost transaction as well
+            transaction.failed |= !success;
+
+            try {
+                db.endTransaction();
+            } catch (RuntimeException e) {
+                transaction.failed = true;
+
+                throw e;
+            } finally {
+                if(--transaction.depth == 0) {
+                    _transaction.remove();
+
+                    if(transaction.failed) {
+                        for (Runnable hook : transaction.onRollback)
+                            hook.run();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * register a hook that undoes in memory state, if the transaction of {@link #runInTransaction(Runnable)} of the
+     * calling thread is rolled back. ignored outside of such a transaction.
+     *
+     * @param hook the hook
+     */
+    void onRollback(Runnable hook)
+    {
+        Transaction transaction = _transaction.get();
+
+        if(transaction != null)
+            transaction.onRollback.add(hook);
+    }
+
+    /**
+     * keep track of the snapshots that are being taken
+     *
+     * @param started {@code true} when a snapshot started, {@code false} when it ended
+     */
+    void onSnapshot(boolean started)
+    {
+        if(started)
+            _snapshots.incrementAndGet();
+        else
+            _snapshots.decrementAndGet();
+    }
+
+    /**
+     * @return is a snapshot being taken, tables must not be dropped without deleting their rows first
+     *
+     * @see TriSnapshot
+     */
+    boolean snapshotting()
+    {
+        return _snapshots.get() > 0;
+    }
+
+    /**
+     * the state of a transaction of {@link #runInTransaction(Runnable)}
+     */
+    private static final class Transaction
+    {
+        int                 depth       = 0;
+        boolean             failed      = false;
+        ArrayList<Runnable> onRollback  = new ArrayList<>();
+    }
+
+}
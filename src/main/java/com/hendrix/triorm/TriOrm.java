@@ -3,8 +3,13 @@ package com.hendrix.triorm;
 import android.content.Context;
 
 import com.hendrix.triorm.exceptions.TableNotExistException;
+import com.hendrix.triorm.interfaces.IIdGenerator;
+import com.hendrix.triorm.query.TriMergedQuery;
 import com.hendrix.triorm.query.TriQuery;
+import com.hendrix.triorm.utils.MonotonicIdGenerator;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 
 /**
@@ -12,9 +17,12 @@ import java.util.HashMap;
  *
  * <ul>
  *      <li>use {@link TriOrm#query(Class)} to get {@link com.hendrix.triorm.query.TriQuery.Builder} of a table.
+ *      <li>use {@link TriOrm#queryAcross(Class[])} to query the merged timeline of several tables.
  *      <li>use {@link TriOrm#load(Class, String)} to get a single Data of a table by identifier.
+ *      <li>use {@link TriOrm#loadAll(Class, java.util.Collection)} to get many Data of a table by identifiers.
  *      <li>use {@link TriOrm#table(Class)} to get {@link com.hendrix.triorm.TriTable} reference of the class type.
  *      <li>use {@link com.hendrix.triorm.TriOrm#newDatabase()} to get a new {@link com.hendrix.triorm.TriDatabase.Builder} instance.
+ *      <li>use {@link TriOrm#setIdGenerator(IIdGenerator)} to plug the generator of the identifiers of new data.
  * </ul>
  *
  * TODO:
@@ -27,6 +35,10 @@ import java.util.HashMap;
 public final class TriOrm
 {
     private static TriOrm                       _instance   = null;
+    /**
+     * the generator of identifiers of new data
+     */
+    private static volatile IIdGenerator        _idGenerator = new MonotonicIdGenerator();
     /**
      * the context
      */
@@ -69,6 +81,19 @@ public final class TriOrm
         return table(type).getData(id);
     }
 
+    /**
+     * load many data from the table by identifiers, with chunked queries instead of a query per identifier.
+     *
+     * @param type  the class type of the table
+     * @param ids   the identifiers of the data
+     * @param <T>   the type itself
+     *
+     * @return {@link ArrayList} of data in the order of the identifiers, with {@code null} for identifiers that do not exist
+     */
+    public static <T extends TriData> ArrayList<T> loadAll(Class<T> type, Collection<String> ids) {
+        return table(type).getData(ids);
+    }
+
     /**
      * get the query builder.
      *
@@ -83,6 +108,54 @@ public final class TriOrm
         return table(type).getQueryBuilder();
     }
 
+    /**
+     * get a builder of a query of the merged timeline of several tables, ordered by {@code time_created}, newest first.
+     * the tables are merged row by row, so every table is only read as far as the limit of the merged result needs.
+     *
+     * @param types the class types of the tables, rows with the same {@code time_created} are ordered by their order
+     *
+     * @return the {@link com.hendrix.triorm.query.TriMergedQuery.Builder} instance
+     *
+     * @throws ClassCastException if a type does not extend {@link TriData}
+     * @throws TableNotExistException if a table does not exist
+     *
+     * @see com.hendrix.triorm.query.TriMergedQuery
+     */
+    public static TriMergedQuery.Builder queryAcross(Class<?>... types) {
+        ArrayList<TriTable<?>> tables = new ArrayList<>(types.length);
+
+        for (Class<?> type : types)
+            tables.add(table(type.asSubclass(TriData.class)));
+
+        return new TriMergedQuery.Builder(tables);
+    }
+
+    /**
+     * set the generator of identifiers for data that is created without one. the default is
+     * {@link com.hendrix.triorm.utils.MonotonicIdGenerator}. tables of the {@link TriTable.Layout#INTEGER_KEY} layout
+     * always generate integers, with {@link com.hendrix.triorm.utils.NumericIdGenerator}.
+     *
+     * @param generator the {@link IIdGenerator}
+     */
+    public static void setIdGenerator(IIdGenerator generator) {
+        _idGenerator = generator;
+    }
+
+    /**
+     * generate an identifier for new data, with the generator of it's table if it has one, or the current generator.
+     * package protected.
+     *
+     * @param type the class type of the data
+     *
+     * @return a new identifier
+     */
+    static String nextId(Class<?> type) {
+        TriTable<?>   table     = (_instance == null) ? null : _instance._mapTables.get(type.getName());
+        IIdGenerator  generator = (table == null) ? null : table.idGenerator();
+
+        return (generator == null) ? _idGenerator.nextId() : generator.nextId();
+    }
+
     /**
      * get a new Database builder object. you can also use:
      * {@code new TriDatabase.Builder(..)} yourself.
@@ -0,0 +1,382 @@
+package com.hendrix.triorm;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.hendrix.triorm.TriTable.Partition;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * the registry of the physical per period tables of a time partitioned {@link TriTable}.
+ * <ul>
+ *      <li>a row is stored in the partition of the period of it's {@code time_created}, named {@code <table>_p<yyyyMMdd>}
+ *      for {@link Partition#DAILY} and {@code <table>_p<yyyyMM>} for {@link Partition#MONTHLY}, in {@code UTC}.
+ *      <li>a small route table {@code <table>_route(id, period)} maps every identifier to it's partition, so identifier
+ *      lookups touch a single partition.
+ * </ul>
+ *
+ * @author Tomer Shalev
+ */
+final class TriPartitions
+{
+    static final String KEY_PERIOD = "period";
+
+    /**
+     * the amount of partitions of a single {@code UNION ALL}, below the 500 terms limit of a compound select of SQLite
+     */
+    private static final int MAX_COMPOUND = 400;
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private final Partition               _partition;
+    private final String                  _tableName;
+    private final String                  _routeName;
+
+    /**
+     * the partitions by the start of their period
+     */
+    private final TreeMap<Long, String>   _mapPartitions  = new TreeMap<>();
+
+    /**
+     * the registry has to be reloaded from the database, after a rolled back transaction created partitions
+     */
+    private volatile boolean              _invalid        = true;
+
+    /**
+     * @param partition the partitioning period
+     * @param tableName the logical table name
+     */
+    TriPartitions(Partition partition, String tableName)
+    {
+        _partition  = partition;
+        _tableName  = tableName;
+        _routeName  = tableName + "_route";
+    }
+
+    /**
+     * @return the name of the route table
+     */
+    String routeName()
+    {
+        return _routeName;
+    }
+
+    /**
+     * create the route table if it does not exist, and load the partitions
+     *
+     * @param db the database
+     */
+    void create(SQLiteDatabase db)
+    {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + _routeName + "("
+                + TriTable.Columns.KEY_ID.key() + " TEXT PRIMARY KEY, "
+                + KEY_PERIOD + " INTEGER" + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + _routeName + "_" + KEY_PERIOD + " ON " + _routeName + "(" + KEY_PERIOD + ")");
+
+        load(db);
+    }
+
+    /**
+     * mark the registry for reloading
+     */
+    void invalidate()
+    {
+        _invalid = true;
+    }
+
+    /**
+     * load the partitions from the schema of the database
+     *
+     * @param db the database
+     */
+    synchronized void load(SQLiteDatabase db)
+    {
+        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'table' AND name GLOB ?",
+                                    new String[] { _tableName + "_p[0-9]*" });
+
+        _mapPartitions.clear();
+
+        try {
+            while(cursor.moveToNext()) {
+                String name = cursor.getString(0);
+
+                _mapPartitions.put(parse(name.substring(_tableName.length() + 2)), name);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        _invalid = false;
+    }
+
+    /**
+     * reload the registry if it was invalidated
+     *
+     * @param db the database
+     */
+    private void validate(SQLiteDatabase db)
+    {
+        if(_invalid)
+            load(db);
+    }
+
+    /**
+     * get all of the partitions
+     *
+     * @param db the database
+     *
+     * @return the partitions by the start of their period, oldest first
+     */
+    synchronized TreeMap<Long, String> all(SQLiteDatabase db)
+    {
+        validate(db);
+
+        return new TreeMap<>(_mapPartitions);
+    }
+
+    /**
+     * get the partitions that overlap a window of time
+     *
+     * @param db    the database
+     * @param from  the start of the window, {@code -1} for unbounded
+     * @param to    the end of the window, {@code -1} for unbounded
+     *
+     * @return the names of the partitions, oldest first
+     */
+    synchronized ArrayList<String> overlapping(SQLiteDatabase db, long from, long to)
+    {
+        validate(db);
+
+        long start  = (from < 0) ? Long.MIN_VALUE : periodOf(from);
+        long end    = (to < 0) ? Long.MAX_VALUE : to;
+
+        if(start > end)
+            return new ArrayList<>();
+
+        return new ArrayList<>(_mapPartitions.subMap(start, true, end, true).values());
+    }
+
+    /**
+     * get the name of a registered partition
+     *
+     * @param db      the database
+     * @param period  the start of the period
+     *
+     * @return the name of the partition, or {@code null} if it does not exist
+     */
+    synchronized String nameOf(SQLiteDatabase db, long period)
+    {
+        validate(db);
+
+        return _mapPartitions.get(period);
+    }
+
+    /**
+     * register a partition that was created
+     *
+     * @param period  the start of the period
+     * @param name    the name of the partition
+     */
+    synchronized void add(long period, String name)
+    {
+        _mapPartitions.put(period, name);
+    }
+
+    /**
+     * unregister a partition that was dropped
+     *
+     * @param period  the start of the period
+     */
+    synchronized void remove(long period)
+    {
+        _mapPartitions.remove(period);
+    }
+
+    /**
+     * get the partition of an identifier by the route table
+     *
+     * @param db  the database
+     * @param id  the identifier
+     *
+     * @return the name of the partition, or {@code null} if the identifier does not exist
+     */
+    String routeOf(SQLiteDatabase db, String id)
+    {
+        Cursor cursor = db.query(_routeName, new String[] { KEY_PERIOD }, TriTable.Columns.KEY_ID.key() + " = ?", new String[] { id }, null, null, null);
+
+        try {
+            return cursor.moveToFirst() ? nameOf(db, cursor.getLong(0)) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * route an identifier to a partition
+     *
+     * @param db      the database
+     * @param id      the identifier
+     * @param period  the start of the period of the partition
+     */
+    void route(SQLiteDatabase db, String id, long period)
+    {
+        ContentValues values = new ContentValues();
+
+        values.put(TriTable.Columns.KEY_ID.key(), id);
+        values.put(KEY_PERIOD, period);
+
+        db.insertWithOnConflict(_routeName, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * forget the route of an identifier
+     *
+     * @param db  the database
+     * @param id  the identifier
+     */
+    void unroute(SQLiteDatabase db, String id)
+    {
+        db.delete(_routeName, TriTable.Columns.KEY_ID.key() + " = ?", new String[] { id });
+    }
+
+    /**
+     * get the start of the period of a time
+     *
+     * @param time the time in milliseconds
+     *
+     * @return the start of the period in milliseconds
+     */
+    long periodOf(long time)
+    {
+        Calendar calendar = Calendar.getInstance(UTC);
+
+        calendar.setTimeInMillis(time);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+
+        if(_partition == Partition.MONTHLY)
+            calendar.set(Calendar.DAY_OF_MONTH, 1);
+
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * get the start of the period that follows a period
+     *
+     * @param period the start of the period
+     *
+     * @return the start of the next period
+     */
+    long nextPeriod(long period)
+    {
+        Calendar calendar = Calendar.getInstance(UTC);
+
+        calendar.setTimeInMillis(period);
+        calendar.add(_partition == Partition.MONTHLY ? Calendar.MONTH : Calendar.DAY_OF_MONTH, 1);
+
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * get the name of the partition of a period
+     *
+     * @param period the start of the period
+     *
+     * @return the name of the partition
+     */
+    String partitionName(long period)
+    {
+        Calendar calendar = Calendar.getInstance(UTC);
+
+        calendar.setTimeInMillis(period);
+
+        int year  = calendar.get(Calendar.YEAR);
+        int month = calendar.get(Calendar.MONTH) + 1;
+        int day   = calendar.get(Calendar.DAY_OF_MONTH);
+
+        if(_partition == Partition.MONTHLY)
+            return _tableName + "_p" + String.format(Locale.US, "%04d%02d", year, month);
+
+        return _tableName + "_p" + String.format(Locale.US, "%04d%02d%02d", year, month, day);
+    }
+
+    /**
+     * parse the period of a partition name suffix
+     *
+     * @param suffix the {@code yyyyMMdd} or {@code yyyyMM} suffix
+     *
+     * @return the start of the period
+     */
+    private static long parse(String suffix)
+    {
+        Calendar calendar = Calendar.getInstance(UTC);
+
+        calendar.clear();
+        calendar.set(Integer.parseInt(suffix.substring(0, 4)), Integer.parseInt(suffix.substring(4, 6)) - 1,
+                     suffix.length() >= 8 ? Integer.parseInt(suffix.substring(6, 8)) : 1);
+
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * a {@code FROM} source over partitions. long lists are nested, so no compound select exceeds the limit of SQLite.
+     *
+     * @param partitions  the names of the partitions, or of nested sources
+     * @param columns     the column list of a partition
+     * @param empty       the source to use when there are no partitions
+     *
+     * @return a table name or a {@code UNION ALL} sub query
+     */
+    static String source(ArrayList<String> partitions, String columns, String empty)
+    {
+        if(partitions.isEmpty())
+            return empty;
+
+        if(partitions.size() == 1)
+            return partitions.get(0);
+
+        if(partitions.size() > MAX_COMPOUND) {
+            ArrayList<String> nested = new ArrayList<>();
+
+            for (int ix = 0; ix < partitions.size(); ix += MAX_COMPOUND)
+                nested.add(source(new ArrayList<>(partitions.subList(ix, Math.min(ix + MAX_COMPOUND, partitions.size()))), columns, empty));
+
+            return source(nested, columns, empty);
+        }
+
+        StringBuilder sb = new StringBuilder("(");
+
+        for (int ix = 0; ix < partitions.size(); ix++) {
+            if(ix > 0)
+                sb.append(" UNION ALL ");
+
+            sb.append("SELECT ").append(columns).append(" FROM ").append(partitions.get(ix));
+        }
+
+        return sb.append(")").toString();
+    }
+
+    /**
+     * @return a printable representation of the registry
+     */
+    @Override
+    public synchronized String toString()
+    {
+        StringBuilder sb = new StringBuilder("TriPartitions:: (" + _tableName + "->" + _partition);
+
+        for (Map.Entry<Long, String> entry : _mapPartitions.entrySet())
+            sb.append(", ").append(entry.getValue());
+
+        return sb.append(")").toString();
+    }
+
+}
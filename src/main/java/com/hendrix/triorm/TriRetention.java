@@ -0,0 +1,199 @@
+package com.hendrix.triorm;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a retention policy of a {@link TriTable}, by maximal age of the {@code time_created} column and/or
+ * maximal amount of rows. expired rows are purged in small batches on a background thread of their own, with a pause
+ * between every batch, so the purging never stalls foreground writes.
+ * also carries the metrics of the purges.
+ *
+ * <ul>
+ *      <li>use {@link TriDatabase.Builder#retention(Class, TriRetention)}, or the
+ *      {@link com.hendrix.triorm.annotations.TriTable} annotation to set the retention of a table.
+ *      <li>use {@link TriTable#purge()} to purge on demand.
+ * </ul>
+ *
+ * @author Tomer Shalev
+ */
+@SuppressWarnings("UnusedDeclaration")
+public class TriRetention
+{
+    /**
+     * maximal age in milliseconds, {@code 0} for none
+     */
+    private long        _maxAge         = 0L;
+    /**
+     * maximal amount of rows, {@code 0} for none
+     */
+    private int         _maxRows        = 0;
+    /**
+     * the amount of rows deleted by a single statement
+     */
+    private int         _batchSize      = 200;
+    /**
+     * the pause between batches in milliseconds
+     */
+    private long        _pause          = 50L;
+    /**
+     * the interval between purges in milliseconds
+     */
+    private long        _interval       = 15 * 60 * 1000L;
+
+    private final AtomicLong _purgedRows    = new AtomicLong();
+    private final AtomicLong _purgeBatches  = new AtomicLong();
+    private final AtomicLong _purgeRuns     = new AtomicLong();
+    private final AtomicLong _purgeErrors   = new AtomicLong();
+    private final AtomicLong _purgeNanos    = new AtomicLong();
+    private volatile long    _lastPurgeTime = 0L;
+
+    /**
+     * @param maxAge    maximal age of the {@code time_created} column in milliseconds, {@code 0} for none
+     * @param maxRows   maximal amount of rows, {@code 0} for none
+     */
+    public TriRetention(long maxAge, int maxRows) {
+        _maxAge   = maxAge;
+        _maxRows  = maxRows;
+    }
+
+    /**
+     * set the amount of rows deleted by a single statement
+     *
+     * @param batchSize the batch size
+     *
+     * @return the retention
+     */
+    public TriRetention batchSize(int batchSize) {
+        _batchSize = batchSize;
+
+        return this;
+    }
+
+    /**
+     * set the pause between batches, that leaves room for foreground writes
+     *
+     * @param pause the pause in milliseconds
+     *
+     * @return the retention
+     */
+    public TriRetention pause(long pause) {
+        _pause = pause;
+
+        return this;
+    }
+
+    /**
+     * set the interval between purges on the purge thread
+     *
+     * @param interval the interval in milliseconds
+     *
+     * @return the retention
+     */
+    public TriRetention interval(long interval) {
+        _interval = interval;
+
+        return this;
+    }
+
+    /**
+     * @return maximal age in milliseconds, {@code 0} for none
+     */
+    public long maxAge() {
+        return _maxAge;
+    }
+
+    /**
+     * @return maximal amount of rows, {@code 0} for none
+     */
+    public int maxRows() {
+        return _maxRows;
+    }
+
+    /**
+     * @return the amount of rows deleted by a single statement
+     */
+    public int batchSize() {
+        return _batchSize;
+    }
+
+    /**
+     * @return the pause between batches in milliseconds
+     */
+    public long pause() {
+        return _pause;
+    }
+
+    /**
+     * @return the interval between purges in milliseconds
+     */
+    public long interval() {
+        return _interval;
+    }
+
+    /**
+     * @return the total amount of purged rows
+     */
+    public long purgedRows() {
+        return _purgedRows.get();
+    }
+
+    /**
+     * @return the total amount of purge statements
+     */
+    public long purgeBatches() {
+        return _purgeBatches.get();
+    }
+
+    /**
+     * @return the total amount of purges
+     */
+    public long purgeRuns() {
+        return _purgeRuns.get();
+    }
+
+    /**
+     * @return the total amount of failed purges
+     */
+    public long purgeErrors() {
+        return _purgeErrors.get();
+    }
+
+    /**
+     * @return the total time spent purging in nanoseconds, not including the pauses
+     */
+    public long purgeNanos() {
+        return _purgeNanos.get();
+    }
+
+    /**
+     * @return the time of the last purge in milliseconds, {@code 0} if never purged
+     */
+    public long lastPurgeTime() {
+        return _lastPurgeTime;
+    }
+
+    void onBatch(int rows, long nanos) {
+        _purgedRows.addAndGet(rows);
+        _purgeBatches.incrementAndGet();
+        _purgeNanos.addAndGet(nanos);
+    }
+
+    void onRun() {
+        _purgeRuns.incrementAndGet();
+        _lastPurgeTime = System.currentTimeMillis();
+    }
+
+    void onError() {
+        _purgeErrors.incrementAndGet();
+    }
+
+    /**
+     * @return a printable representation of this retention and it's metrics
+     */
+    @Override
+    public String toString() {
+        return "TriRetention:: (maxAge->" + _maxAge + ", maxRows->" + _maxRows + ", purgedRows->" + purgedRows()
+                + ", purgeBatches->" + purgeBatches() + ", purgeRuns->" + purgeRuns() + ", purgeErrors->" + purgeErrors() + ")";
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.hendrix.triorm;
+
+import java.nio.ByteBuffer;
+
+/**
+ * a raw row of a {@link TriTable}, the metadata columns and the serialized data, for paths that only move rows to
+ * another process or file, and never need the objects. the blob is always in the standard serialized form of
+ * {@link com.hendrix.triorm.utils.SSerialize#serializeToByteArray(java.io.Serializable)}, so it is independent of the
+ * class dictionary and the blob files of the database it was read from. the metadata of the row wins over the fields
+ * that are embedded in the blob, like it does when data is loaded.
+ *
+ * <ul>
+ *      <li>use {@link TriTable#getRow(String)}, {@link com.hendrix.triorm.query.TriQuery#queryRows()} or
+ *      {@link com.hendrix.triorm.query.TriQuery#rows()} to read rows.
+ *      <li>use {@link TriTable#addRow(TriRow)} to write a pre-serialized row.
+ * </ul>
+ *
+ * @author Tomer Shalev
+ */
+@SuppressWarnings("UnusedDeclaration")
+public final class TriRow
+{
+    private final String      _id;
+    private final String      _type;
+    private final long        _timeCreated;
+    private final ByteBuffer  _blob;
+
+    /**
+     * @param id          the identifier
+     * @param type        the type, may be {@code null}
+     * @param timeCreated the creation time
+     * @param blob        the data in the standard serialized form
+     */
+    public TriRow(String id, String type, long timeCreated, byte[] blob)
+    {
+        this(id, type, timeCreated, (blob == null) ? null : ByteBuffer.wrap(blob));
+    }
+
+    /**
+     * @param id          the identifier
+     * @param type        the type, may be {@code null}
+     * @param timeCreated the creation time
+     * @param blob        the data in the standard serialized form, from it's position to it's limit
+     */
+    public TriRow(String id, String type, long timeCreated, ByteBuffer blob)
+    {
+        _id           = id;
+        _type         = type;
+        _timeCreated  = timeCreated;
+        _blob         = blob;
+    }
+
+    public String getId()
+    {
+        return _id;
+    }
+
+    public String getType()
+    {
+        return _type;
+    }
+
+    public long getTimeCreated()
+    {
+        return _timeCreated;
+    }
+
+    /**
+     * @return a read only view of the serialized data, a blob that is kept in a file is a memory mapping of it
+     */
+    public ByteBuffer getBuffer()
+    {
+        return (_blob == null) ? null : _blob.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return the serialized data, the array the row was created with, or a copy of the buffer
+     */
+    public byte[] getBlob()
+    {
+        if(_blob == null)
+            return null;
+
+        if(_blob.hasArray() && _blob.arrayOffset() == 0 && _blob.position() == 0 && _blob.remaining() == _blob.array().length)
+            return _blob.array();
+
+        byte[] blob = new byte[_blob.remaining()];
+
+        _blob.duplicate().get(blob);
+
+        return blob;
+    }
+
+    /**
+     * @return the size of the serialized data in bytes
+     */
+    public int size()
+    {
+        return (_blob == null) ? 0 : _blob.remaining();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TriRow:: (id->" + _id + ", type->" + _type + ", time_created->" + _timeCreated + ", bytes->" + size() + ")";
+    }
+
+}
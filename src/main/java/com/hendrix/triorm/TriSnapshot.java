@@ -0,0 +1,469 @@
+package com.hendrix.triorm;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.hendrix.triorm.interfaces.ISnapshotListener;
+
+import java.io.File;
+import java.util.ArrayList;
+
+/**
+ * a consistent point in time copy of a {@link TriDatabase} into another database file, taken while the
+ * database is in use. also carries the progress and throughput of the copy.
+ * <p/>
+ * the snapshot file is attached to the shared connection. temporary triggers keep the first pre-image of every row
+ * that is changed after the point in time in a temporary copy-on-write table, and the unchanged rows are copied
+ * by primary key order in small steps, every step in it's own short transaction, with a pause between steps, so foreground
+ * writers are never stalled. at last the pre-images are copied over, which makes the snapshot consistent.
+ * <p/>
+ * <b>Notes:</b>
+ * <ul>
+ *      <li>only writes through the {@link TriDatabase} are observed, not writes of other processes or other helpers of the same file.
+ *      <li>do not close the database while a snapshot is being taken, the temporary triggers live on it's connection.
+ *      <li>the snapshot blocks, take it off the main thread.
+ * </ul>
+ *
+ * @see TriDatabase#snapshot(File)
+ *
+ * @author Tomer Shalev
+ */
+@SuppressWarnings("UnusedDeclaration")
+public final class TriSnapshot
+{
+    /**
+     * the amount of rows copied by a single step
+     */
+    static final int    STEP_ROWS   = 256;
+    /**
+     * the pause between steps in milliseconds
+     */
+    static final long   STEP_PAUSE  = 5L;
+
+    private static final String SCHEMA  = "triorm_snapshot";
+    private static final String COW     = "triorm_cow_";
+    private static final String TRIGGER = "triorm_snapshot_";
+
+    private final File  _file;
+    private long        _totalRows  = 0L;
+    private long        _rows       = 0L;
+    private int         _steps      = 0;
+    private long        _nanos      = 0L;
+    private boolean     _complete   = false;
+
+    private TriSnapshot(File file)
+    {
+        _file = file;
+    }
+
+    /**
+     * @return the snapshot file
+     */
+    public File file() {
+        return _file;
+    }
+
+    /**
+     * @return the amount of rows at the point in time, counted when the snapshot started
+     */
+    public long totalRows() {
+        return _totalRows;
+    }
+
+    /**
+     * @return the amount of rows copied so far
+     */
+    public long rows() {
+        return _rows;
+    }
+
+    /**
+     * @return the amount of steps so far
+     */
+    public int steps() {
+        return _steps;
+    }
+
+    /**
+     * @return the time elapsed so far in nanoseconds, including the pauses between steps
+     */
+    public long nanos() {
+        return _nanos;
+    }
+
+    /**
+     * @return the size of the snapshot file so far in bytes
+     */
+    public long bytes() {
+        return _file.length();
+    }
+
+    /**
+     * @return was the snapshot completed
+     */
+    public boolean complete() {
+        return _complete;
+    }
+
+    /**
+     * @return the progress between {@code 0} and {@code 1}
+     */
+    public double progress() {
+        if(_complete)
+            return 1.0;
+
+        return (_totalRows == 0L) ? 0.0 : Math.min(1.0, (double) _rows / _totalRows);
+    }
+
+    /**
+     * @return the copied rows per second
+     */
+    public double rowsPerSecond() {
+        return (_nanos == 0L) ? 0.0 : _rows * 1e9 / _nanos;
+    }
+
+    /**
+     * @return the written bytes per second
+     */
+    public double bytesPerSecond() {
+        return (_nanos == 0L) ? 0.0 : bytes() * 1e9 / _nanos;
+    }
+
+    /**
+     * @return a printable representation of the progress
+     */
+    @Override
+    public String toString() {
+        return "TriSnapshot:: (file->" + _file + ", rows->" + _rows + "/" + _totalRows + ", steps->" + _steps
+                + ", bytes->" + bytes() + ", rows/s->" + (long) rowsPerSecond() + ", bytes/s->" + (long) bytesPerSecond()
+                + ", complete->" + _complete + ")";
+    }
+
+    /**
+     * a table of the database, and the state of it's copy
+     */
+    private static final class Table
+    {
+        final String  name;
+        final String  pk;
+        String        lastPk  = null;
+        boolean       done    = false;
+
+        Table(String name, String pk) {
+            this.name = name;
+            this.pk   = pk;
+        }
+    }
+
+    /**
+     * take a snapshot
+     *
+     * @param helper    the open helper of the database
+     * @param file      the snapshot file, it is overwritten
+     * @param listener  the listener of the progress, may be {@code null}
+     *
+     * @return the completed snapshot
+     */
+    static TriSnapshot take(TriOpenHelper helper, File file, ISnapshotListener listener)
+    {
+        TriSnapshot       snapshot  = new TriSnapshot(file);
+        SQLiteDatabase    db        = helper.getWritableDatabase();
+        ArrayList<Table>  tables    = new ArrayList<>();
+        long              start     = System.nanoTime();
+        boolean           success   = false;
+
+        if(file.exists() && !file.delete())
+            throw new IllegalStateException("TriOrm - can not overwrite the snapshot file " + file);
+
+        // attaching is not allowed inside a transaction
+        db.execSQL("ATTACH DATABASE ? AS " + SCHEMA, new Object[] { file.getAbsolutePath() });
+
+        helper.onSnapshot(true);
+
+        try {
+            snapshot._totalRows = begin(db, tables);
+
+            for (Table table : tables) {
+                while(!table.done) {
+                    snapshot._rows  += step(db, table);
+                    snapshot._steps += 1;
+                    snapshot._nanos  = System.nanoTime() - start;
+
+                    if(listener != null)
+                        listener.onProgress(snapshot);
+
+                    pause();
+                }
+            }
+
+            finish(db, tables);
+
+            snapshot._nanos     = System.nanoTime() - start;
+            snapshot._complete  = true;
+
+            success = true;
+        } finally {
+            try {
+                cleanUp(db, tables);
+            } finally {
+                helper.onSnapshot(false);
+
+                db.execSQL("DETACH DATABASE " + SCHEMA);
+
+                if(!success)
+                    file.delete();
+            }
+        }
+
+        if(listener != null)
+            listener.onProgress(snapshot);
+
+        return snapshot;
+    }
+
+    /**
+     * the point in time of the snapshot. in a single transaction, create the schema of the snapshot file, the
+     * copy-on-write tables and triggers, and copy the tables that have no single primary key as a whole.
+     *
+     * @param db      the database
+     * @param tables  receives the tables that are copied in steps
+     *
+     * @return the amount of rows at the point in time
+     */
+    private static long begin(SQLiteDatabase db, ArrayList<Table> tables)
+    {
+        long total = 0L;
+
+        db.beginTransaction();
+
+        try {
+            db.execSQL("PRAGMA " + SCHEMA + ".user_version = " + db.getVersion());
+
+            Cursor cursor = db.rawQuery("SELECT name, sql FROM main.sqlite_master WHERE type = 'table' AND name NOT LIKE 'sqlite%'", null);
+
+            try {
+                while(cursor.moveToNext()) {
+                    String name = cursor.getString(0);
+
+                    db.execSQL(cursor.getString(1).replaceFirst("(?i)^CREATE TABLE ", "CREATE TABLE " + SCHEMA + "."));
+
+                    total += DatabaseUtils.queryNumEntries(db, "main." + name);
+
+                    String pk = primaryKey(db, name);
+
+                    if(pk == null) {
+                        db.execSQL("INSERT INTO " + SCHEMA + "." + name + " SELECT * FROM main." + name);
+                        continue;
+                    }
+
+                    tables.add(new Table(name, pk));
+                }
+            } finally {
+                cursor.close();
+            }
+
+            // the indexes are created on the empty tables, so every step maintains them a little
+            cursor = db.rawQuery("SELECT sql FROM main.sqlite_master WHERE type = 'index' AND sql IS NOT NULL", null);
+
+            try {
+                while(cursor.moveToNext())
+                    db.execSQL(cursor.getString(0).replaceFirst("(?i)^CREATE (UNIQUE )?INDEX ", "CREATE $1INDEX " + SCHEMA + "."));
+            } finally {
+                cursor.close();
+            }
+
+            for (Table table : tables)
+                createCopyOnWrite(db, table);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return total;
+    }
+
+    /**
+     * create the copy-on-write table and triggers of a table, that keep the first pre-image of every row that changes.
+     * rows that did not exist at the point in time are kept with {@code existed = 0}.
+     * the conflict clause of the statement that fires a trigger overrides the ones inside of it, and the tables are
+     * written with {@code INSERT OR REPLACE}, so the triggers never rely on a conflict to keep the first pre-image.
+     *
+     * @param db    the database
+     * @param table the table
+     */
+    private static void createCopyOnWrite(SQLiteDatabase db, Table table)
+    {
+        String cow    = COW + table.name;
+        String kept   = " AND NOT EXISTS (SELECT 1 FROM " + cow + " WHERE " + table.pk + " = ";
+        String keep   = "INSERT INTO " + cow + " SELECT 1, * FROM " + table.name + " WHERE " + table.pk + " = %1$s" + kept + "%1$s)";
+        String absent = "INSERT INTO " + cow + " (existed, " + table.pk + ") SELECT 0, NEW." + table.pk + " WHERE 1" + kept + "NEW." + table.pk + ");";
+
+        db.execSQL("CREATE TEMP TABLE " + cow + " AS SELECT 1 AS existed, * FROM main." + table.name + " WHERE 0");
+        db.execSQL("CREATE INDEX temp." + cow + "_pk ON " + cow + "(" + table.pk + ")");
+
+        String oldRow = String.format(keep, "OLD." + table.pk) + "; ";
+        String newRow = String.format(keep, "NEW." + table.pk) + "; ";
+
+        db.execSQL("CREATE TEMP TRIGGER " + TRIGGER + "insert_" + table.name + " BEFORE INSERT ON main." + table.name + " BEGIN "
+                   + newRow + absent + " END");
+        db.execSQL("CREATE TEMP TRIGGER " + TRIGGER + "update_" + table.name + " BEFORE UPDATE ON main." + table.name + " BEGIN "
+                   + oldRow + newRow + absent + " END");
+        db.execSQL("CREATE TEMP TRIGGER " + TRIGGER + "delete_" + table.name + " BEFORE DELETE ON main." + table.name + " BEGIN "
+                   + oldRow + " END");
+    }
+
+    /**
+     * copy the next {@link #STEP_ROWS} rows of a table in primary key order, skipping the rows that changed since
+     * the point in time, in a single short transaction
+     *
+     * @param db    the database
+     * @param table the table
+     *
+     * @return the amount of copied rows
+     */
+    private static int step(SQLiteDatabase db, Table table)
+    {
+        db.beginTransaction();
+
+        try {
+            // a partition that was dropped meanwhile had all of it's rows kept by the triggers
+            if(DatabaseUtils.longForQuery(db, "SELECT count(*) FROM main.sqlite_master WHERE type = 'table' AND name = ?", new String[] { table.name }) == 0) {
+                table.done = true;
+                db.setTransactionSuccessful();
+
+                return 0;
+            }
+
+            String    after   = (table.lastPk == null) ? "" : " WHERE " + table.pk + " > ?";
+            String[]  args    = (table.lastPk == null) ? null : new String[] { table.lastPk };
+            Cursor    cursor  = db.rawQuery("SELECT " + table.pk + " FROM main." + table.name + after + " ORDER BY " + table.pk
+                                            + " LIMIT 1 OFFSET " + (STEP_ROWS - 1), args);
+            String    upper;
+
+            try {
+                upper = cursor.moveToFirst() ? cursor.getString(0) : null;
+            } finally {
+                cursor.close();
+            }
+
+            ArrayList<Object> bind = new ArrayList<>();
+            String            where = " WHERE " + table.pk + " NOT IN (SELECT " + table.pk + " FROM " + COW + table.name + ")";
+
+            if(table.lastPk != null) {
+                where += " AND " + table.pk + " > ?";
+                bind.add(table.lastPk);
+            }
+
+            if(upper != null) {
+                where += " AND " + table.pk + " <= ?";
+                bind.add(upper);
+            }
+
+            db.execSQL("INSERT OR REPLACE INTO " + SCHEMA + "." + table.name + " SELECT * FROM main." + table.name + where, bind.toArray());
+
+            int copied = (int) DatabaseUtils.longForQuery(db, "SELECT changes()", null);
+
+            table.lastPk  = upper;
+            table.done    = (upper == null);
+
+            db.setTransactionSuccessful();
+
+            return copied;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * copy the pre-images of the rows that changed since the point in time, in a single transaction
+     *
+     * @param db      the database
+     * @param tables  the tables
+     */
+    private static void finish(SQLiteDatabase db, ArrayList<Table> tables)
+    {
+        db.beginTransaction();
+
+        try {
+            for (Table table : tables) {
+                StringBuilder columns = new StringBuilder();
+                Cursor        cursor  = db.rawQuery("PRAGMA " + SCHEMA + ".table_info(" + table.name + ")", null);
+
+                try {
+                    while(cursor.moveToNext())
+                        columns.append(columns.length() == 0 ? "" : ", ").append(cursor.getString(1));
+                } finally {
+                    cursor.close();
+                }
+
+                db.execSQL("INSERT OR REPLACE INTO " + SCHEMA + "." + table.name + " (" + columns + ") SELECT " + columns
+                           + " FROM " + COW + table.name + " WHERE existed = 1");
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * drop the copy-on-write triggers and tables
+     *
+     * @param db      the database
+     * @param tables  the tables
+     */
+    private static void cleanUp(SQLiteDatabase db, ArrayList<Table> tables)
+    {
+        for (Table table : tables) {
+            db.execSQL("DROP TRIGGER IF EXISTS temp." + TRIGGER + "insert_" + table.name);
+            db.execSQL("DROP TRIGGER IF EXISTS temp." + TRIGGER + "update_" + table.name);
+            db.execSQL("DROP TRIGGER IF EXISTS temp." + TRIGGER + "delete_" + table.name);
+            db.execSQL("DROP TABLE IF EXISTS temp." + COW + table.name);
+        }
+    }
+
+    /**
+     * get the single primary key column of a table
+     *
+     * @param db    the database
+     * @param table the table name
+     *
+     * @return the column, or {@code null} if the table has no primary key, or a composite one
+     */
+    private static String primaryKey(SQLiteDatabase db, String table)
+    {
+        String  pk      = null;
+        int     count   = 0;
+        Cursor  cursor  = db.rawQuery("PRAGMA main.table_info(" + table + ")", null);
+
+        try {
+            while(cursor.moveToNext()) {
+                if(cursor.getInt(5) > 0) {
+                    pk = cursor.getString(1);
+                    count++;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return (count == 1) ? pk : null;
+    }
+
+    /**
+     * pause between steps, leaves room for foreground writers
+     */
+    private static void pause()
+    {
+        try {
+            Thread.sleep(STEP_PAUSE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException("TriOrm - the snapshot was interrupted");
+        }
+    }
+
+}
@@ -3,22 +3,55 @@ package com.hendrix.triorm;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
+import com.hendrix.triorm.exceptions.CorruptedDataException;
+import com.hendrix.triorm.exceptions.TableAnnotationException;
+import com.hendrix.triorm.interfaces.IIdGenerator;
+import com.hendrix.triorm.interfaces.IMigration;
 import com.hendrix.triorm.query.TriQuery;
 import com.hendrix.triorm.query.TriQuery.ORDER;
+import com.hendrix.triorm.query.TriQueryCache;
+import com.hendrix.triorm.utils.BloomFilter;
+import com.hendrix.triorm.utils.NumericIdGenerator;
+import com.hendrix.triorm.utils.SExecutors;
+import com.hendrix.triorm.utils.SReflection;
 import com.hendrix.triorm.utils.SSerialize;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * simple 3D <b>SQL</b> table carrier with {@code (id, type, data, time_created)} rows, that serializes/deserialize to/from database.<br/>
  * <ul>
  *      <li>use {@link #addData(TriData)}, {@link #addDataWithConflict(TriData, int)}  to add data.
  *      <li>use {@link #getData(String)} to get a single data by identifier.
+ *      <li>use {@link #getData(java.util.Collection)} to get many data by identifiers in one round trip.
+ *      <li>use {@link #exists(String)} to query the existence of data by identifier without loading it.
  *      <li>use {@link #delete(String)}, {@link #delete(TriData)}  to delete data.
+ *      <li>use {@link #exportTo(WritableByteChannel)}, {@link #importFrom(ReadableByteChannel)} to move a whole table.
+ *      <li>use {@link #getRow(String)}, {@link #addRow(TriRow)} to move raw rows without de-serializing them.
  *      <li>use {@link #getQueryBuilder()} to get the query builder.
+ *      <li>use {@link TriDatabase.Builder#partition(Class, Partition)} to partition the table by time.
  *      <li>there are also other query methods, but all are based on {@link #getQueryBuilder()}.
  * </ul>
  *
@@ -49,6 +82,156 @@ public class TriTable<T extends TriData> extends SQLiteOpenHelper
     // Table name
     protected String TABLE_NAME;
 
+    // amount of rows that are re-encoded in a single transaction while migrating
+    protected int MIGRATION_BATCH_SIZE = 256;
+
+    // amount of identifiers bound to a single IN (...) query, below the 999 host parameters limit of SQLite
+    protected int MULTI_GET_CHUNK_SIZE = 500;
+
+    // amount of rows that are written in a single transaction while importing
+    protected int IMPORT_BATCH_SIZE = 2000;
+
+    // delay in milliseconds of deleting the files of the blobs of deleted rows, so a burst of writes is swept once
+    protected long BLOB_SWEEP_DELAY = 1000;
+
+    /**
+     * the user supplied transform that is applied on every row when the version was bumped
+     */
+    private IMigration<T> _migration = null;
+
+    /**
+     * was the table created and migrated for this instance
+     */
+    private volatile boolean _schemaReady = false;
+
+    /**
+     * the time it took to open the database and create the table on first use, {@code -1} if not opened yet
+     */
+    private volatile long _openNanos = -1L;
+
+    /**
+     * the retention policy, may be {@code null}
+     */
+    private TriRetention _retention = null;
+
+    /**
+     * the physical layout of the table
+     */
+    private Layout _layout = Layout.ROWID;
+
+    /**
+     * the generator of the identifiers of new data, {@code null} for the global one
+     */
+    private volatile IIdGenerator _idGenerator = null;
+
+    /**
+     * the page size of the database file, {@code 0} for the default
+     */
+    private int _pageSize = 0;
+
+    /**
+     * the open helper shared by the tables of the {@link TriDatabase}, {@code null} for a standalone table
+     */
+    private TriOpenHelper _helper = null;
+
+    /**
+     * the time partitioning of the table
+     */
+    private Partition _partition = Partition.NONE;
+
+    /**
+     * the registry of the partitions, {@code null} if the table is not partitioned
+     */
+    private TriPartitions _partitions = null;
+
+    /**
+     * the fields annotated with {@link com.hendrix.triorm.annotations.TriIndex} by their column name
+     */
+    private LinkedHashMap<String, Field> _indexedFields = new LinkedHashMap<>();
+
+    /**
+     * the expected amount of identifiers of the Bloom filter, {@code 0} if the table has none
+     */
+    private int _bloomCapacity = 0;
+
+    /**
+     * the Bloom filter of the identifiers, built on open
+     */
+    private volatile BloomFilter _bloom = null;
+
+    /**
+     * a Bloom filter that is being rebuilt, it receives the identifiers added during the rebuild
+     */
+    private BloomFilter _bloomRebuild = null;
+
+    /**
+     * the identifiers added while the rows are counted for a rebuild, before the rebuilt Bloom filter exists
+     */
+    private ArrayList<String> _bloomPending = null;
+
+    /**
+     * amount of identifiers added/deleted since the Bloom filter was built
+     */
+    private final AtomicInteger _bloomAdds = new AtomicInteger(), _bloomDeletes = new AtomicInteger();
+
+    private final AtomicBoolean _bloomRebuildScheduled = new AtomicBoolean();
+
+    /**
+     * the cache of the query results, {@code null} if the table has none
+     */
+    private TriQueryCache<T> _queryCache = null;
+
+    /**
+     * is the data serialized against the class dictionary
+     */
+    private boolean _compact = false;
+
+    /**
+     * the dictionary of the class descriptors of the compact rows
+     */
+    private final TriClassDictionary _dictionary = new TriClassDictionary(this);
+
+    /**
+     * the files of the blobs that are kept beside the database, {@code null} until the table is opened, and if
+     * the table has no database file, or never kept blobs in files
+     */
+    private volatile TriBlobStore _blobs = null;
+
+    private volatile boolean _blobsOpened = false;
+
+    /**
+     * the size in bytes above which blobs are kept in files, {@code 0} to keep all of them in the rows
+     */
+    private int _blobThreshold = 0;
+
+    private final AtomicBoolean _blobSweepScheduled = new AtomicBoolean();
+
+    /**
+     * the next sweep reads every reference of the table, instead of checking the candidates of the writes
+     */
+    private final AtomicBoolean _blobScan = new AtomicBoolean(true);
+
+    /**
+     * the column of the hash of the serialized data of a row, {@code NULL} when it is unknown
+     */
+    static final String KEY_HASH = "data_hash";
+
+    /**
+     * are writes of data that did not change since it was last written skipped
+     */
+    private boolean _dirtyChecking = false;
+
+    /**
+     * does the table have the hash column. once it does, it is kept up to date, even if dirty checking was turned off,
+     * so it is never stale when it is turned on again
+     */
+    private volatile boolean _hashed = false;
+
+    /**
+     * amount of writes that were checked/skipped since the table was created
+     */
+    private final AtomicLong _checkedWrites = new AtomicLong(), _skippedWrites = new AtomicLong();
+
     /**
      * get the query builder
      *
@@ -76,6 +259,12 @@ public class TriTable<T extends TriData> extends SQLiteOpenHelper
         return TABLE_NAME;
     }
 
+    /**
+     * the columns that are projected in order to load data, consumed by {@link #decode(Cursor)}
+     */
+    public static final String[] DATA_PROJECTION = new String[] { Columns.KEY_DATA.key(), Columns.KEY_ID.key(),
+                                                                  Columns.KEY_TYPE.key(), Columns.KEY_CREATED.key() };
+
     /**
      * enum describing the columns of the table
      *
@@ -101,6 +290,40 @@ public class TriTable<T extends TriData> extends SQLiteOpenHelper
         }
     }
 
+    /**
+     * enum describing the physical layout of the table, it only applies when the table is created.
+     *
+     * <ul>
+     *      <li>{@link #ROWID} - the default, a hidden rowid B-tree plus a separate index of the {@code TEXT} identifier.
+     *      <li>{@link #WITHOUT_ROWID} - a single B-tree clustered on the identifier, the rows are stored in
+     *      identifier order with no separate index. requires {@code SQLite 3.8.2} (Lollipop), older platforms
+     *      fall back to {@link #ROWID}.
+     *      <li>{@link #INTEGER_KEY} - the identifier is the rowid itself. all identifiers must be integers, and they
+     *      are ordered numerically rather than lexically. data that is created without an identifier, after the
+     *      table was added, gets one from {@link com.hendrix.triorm.utils.NumericIdGenerator}.
+     * </ul>
+     */
+    public enum Layout {
+        ROWID, WITHOUT_ROWID, INTEGER_KEY
+    }
+
+    /**
+     * enum describing the time partitioning of the table by the {@code time_created} column.
+     *
+     * <ul>
+     *      <li>{@link #NONE} - the default, a single physical table.
+     *      <li>{@link #DAILY} - a physical table per day in {@code UTC}.
+     *      <li>{@link #MONTHLY} - a physical table per month in {@code UTC}.
+     * </ul>
+     *
+     * queries over a window of {@code time_created} only read the overlapping partitions, and the retention
+     * drops whole partitions instead of deleting their rows. a small route table maps every identifier to it's
+     * partition, so lookups by identifier still touch a single partition.
+     */
+    public enum Partition {
+        NONE, DAILY, MONTHLY
+    }
+
     /**
      * A new table
      *
@@ -110,6 +333,20 @@ public class TriTable<T extends TriData> extends SQLiteOpenHelper
      * @param version       version number
      */
     public TriTable(Context context, String databaseName, String tableName, int version)
+    {
+        this(context, databaseName, tableName, version, null);
+    }
+
+    /**
+     * A new table with a migration
+     *
+     * @param context       Android's context
+     * @param databaseName  name of the database to be created or loaded
+     * @param tableName     the name of the table to be loaded
+     * @param version       version number
+     * @param migration     the transform that is applied on every row when the version was bumped, may be {@code null}
+     */
+    public TriTable(Context context, String databaseName, String tableName, int version, IMigration<T> migration)
     {
         super(context, databaseName, null, version);
 
@@ -118,243 +355,2798 @@ public class TriTable<T extends TriData> extends SQLiteOpenHelper
         DATABASE_NAME 			    = databaseName;
         TABLE_NAME 					    = tableName;
 
-        onCreate(getWritableDatabase());
-    }
-
-    @Override
-    public void onCreate(SQLiteDatabase db)
-    {
-        String CREATE_TABLE_COMMAND   = "CREATE TABLE IF NOT EXISTS "
-          + TABLE_NAME + "("
-          + Columns.KEY_ID.key()      + " TEXT PRIMARY KEY, "
-          + Columns.KEY_TYPE.key()    + " STRING, "
-          //+ Columns.KEY_DATA.key()    + " TEXT, "
-          + Columns.KEY_DATA.key()    + " BLOB, "
-          + Columns.KEY_CREATED.key() + " INTEGER" + ")";
-
-        db.execSQL(CREATE_TABLE_COMMAND);
+        _migration              = migration;
 
         _queryBuilder                 = new TriQuery.Builder<>(this);
         _queryBuilder.flagCacheQuery  = true;
     }
 
-    @Override
-    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion)
+    /**
+     * open the database, create and migrate the table. this happens lazily on first use anyway,
+     * use this to warm up the table ahead of time, preferably off the main thread.
+     *
+     * @see com.hendrix.triorm.TriDatabase#warmUp()
+     */
+    public void open()
     {
-        // Drop older table if existed
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
-
-        // Create tables again
-        onCreate(db);
+        getWritableDatabase();
     }
 
     /**
-     * add/replace new/older data, or update an older one with the correct conflict algorithm
-     *
-     * @param data the data
+     * @return the time in nanoseconds it took to open the database and create the table on first use,
+     *         or {@code -1} if the table was not opened yet
      */
-    public void addData(T data)
+    public long openNanos()
     {
-        addDataWithConflict(data, SQLiteDatabase.CONFLICT_REPLACE);
+        return _openNanos;
     }
 
     /**
-     * add new data, or update an older one with the correct conflict algorithm
-     *
-     * @param data              the data
-     * @param conflictAlgorithm for example <code>SQLiteDatabase.CONFLICT_REPLACE</code>
-     *
+     * get the database, through the helper of the {@link TriDatabase} the table belongs to, and create and migrate
+     * the table on first use.
      */
-    public void addDataWithConflict(T data, int conflictAlgorithm)
+    @Override
+    public SQLiteDatabase getWritableDatabase()
     {
-        SQLiteDatabase 	db 			= this.getWritableDatabase();
-
-        ContentValues 	values 	= new ContentValues();
+        long            start = (_openNanos == -1L) ? System.nanoTime() : 0L;
+        SQLiteDatabase  db    = (_helper != null) ? _helper.getWritableDatabase() : super.getWritableDatabase();
 
-        values.put(Columns.KEY_ID.key(),      data.getId());
-        values.put(Columns.KEY_TYPE.key(),    data.getType());
-        //values.put(Columns.KEY_DATA.key(),    SSerialize.serialize(data));
-        values.put(Columns.KEY_DATA.key(),    SSerialize.serializeToByteArray(data));
-        values.put(Columns.KEY_CREATED.key(), data.getTimeCreated());
+        ensureSchema(db);
 
-        if(data.getId() == null)
-            throw new NullPointerException("data.getId() = null");
+        if(start != 0L && _openNanos == -1L)
+            _openNanos = System.nanoTime() - start;
 
-        // Inserting Row
-        db.insertWithOnConflict(TABLE_NAME, null, values, conflictAlgorithm);
-        db.close();
+        return db;
     }
 
     /**
-     * general get data
-     *
-     * @return {@link ArrayList} of data
+     * get the database, through the helper of the {@link TriDatabase} the table belongs to, and create and migrate
+     * the table on first use.
      */
-    synchronized public ArrayList<T> getData( String idFrom, String idTo,
-                                              String type, long createdFrom, long createdTo)
+    @Override
+    public SQLiteDatabase getReadableDatabase()
     {
-        return _queryBuilder.reset().idFrom(idFrom).idTo(idTo).type(type).timeCreatedFrom(createdFrom).timeCreatedTo(createdTo).ORDER(Columns.KEY_CREATED, ORDER.DESC).build().query();
+        long            start = (_openNanos == -1L) ? System.nanoTime() : 0L;
+        SQLiteDatabase  db    = (_helper != null) ? _helper.getReadableDatabase() : super.getReadableDatabase();
+
+        ensureSchema(db);
+
+        if(start != 0L && _openNanos == -1L)
+            _openNanos = System.nanoTime() - start;
+
+        return db;
     }
 
     /**
-     * Select data by it's identifier
-     *
-     * @param id the id of the data
-     * @return the data
+     * close the database. tables of a {@link TriDatabase} share it, so it is closed for all of them,
+     * and re-opened on next use.
      */
-    public T getData(String id)
+    @Override
+    public synchronized void close()
     {
-        SQLiteDatabase 	db 			= this.getReadableDatabase();
-
-        Cursor 					cursor 	= db.query(TABLE_NAME, new String[] { Columns.KEY_DATA.key() }, Columns.KEY_ID.key() + "=?", new String[] { String.valueOf(id) }, null, null, null, null);
-
-        if(cursor==null || (cursor.getCount()==0))
-            return null;
-
-        cursor.moveToFirst();
-
-        //T res                   = SSerialize.deserialize(cursor.getString(0)); ******
-        T res                   = SSerialize.deserialize(cursor.getBlob(0));
-
-        cursor.close();
-
-        return res;
+        if(_helper != null)
+            _helper.close();
+        else
+            super.close();
     }
 
     /**
-     * Select data set by it's type
-     *
-     * @param type the type of the data
+     * share the open helper of the {@link TriDatabase} the table belongs to, before the table was opened
      *
-     * @return {@link ArrayList} of data
+     * @param helper the shared helper
      */
-    public ArrayList<T> getDataByType(String type)
+    void attach(TriOpenHelper helper)
     {
-        return _queryBuilder.reset().type(type).build().query();
+        _helper = helper;
     }
 
     /**
-     * Select data from a window of identifiers. useful when ids are timestamps.
-     * requires QA.
-     *
-     * @param idFrom    starting id
-     * @param idTo      last id
+     * get the database without creating or migrating the table, for the book keeping of the table itself
      *
-     * @return {@link ArrayList} of data
+     * @return the database
      */
-    public ArrayList<T> getDataBetweenId(String idFrom, String idTo)
+    SQLiteDatabase database()
     {
-        return _queryBuilder.reset().idFrom(idFrom).idTo(idTo).build().query();
+        return (_helper != null) ? _helper.getWritableDatabase() : super.getWritableDatabase();
     }
 
     /**
-     * Select data from a window of time_created with projected type requires QA.
-     *
-     * @param date_from time_created start
-     * @param date_to   time_created end
-     * @param type      the type
+     * register a hook that undoes in memory state if the current transaction of the {@link TriDatabase} is rolled back
      *
-     * @return {@link ArrayList} of data
+     * @param hook the hook
      */
-    public ArrayList<T> getDataBetweenDateWithType(long date_from, long date_to, String type)
+    void onRollback(Runnable hook)
     {
-        return _queryBuilder.reset().timeCreatedFrom(date_from).timeCreatedTo(date_to).type(type).ORDER(Columns.KEY_CREATED, ORDER.DESC).build().query();
+        if(_helper != null)
+            _helper.onRollback(hook);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db)
+    {
+        super.onConfigure(db);
+
+        // only takes effect when the database file is created
+        if(_pageSize > 0)
+            db.setPageSize(_pageSize);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db)
+    {
+        createTable(db, TABLE_NAME);
     }
 
     /**
-     * Select data from a window of time_created with projected type requires QA.
-     *
-     * @param date_from time_created start
-     * @param date_to   time_created end
+     * get the physical layout the table is created with
      *
-     * @return {@link ArrayList} of data
+     * @return the {@link Layout}, after falling back on platforms that do not support it
      */
-    public ArrayList<T> getDataBetweenDate(long date_from, long date_to)
+    public Layout layout()
     {
-        return _queryBuilder.reset().timeCreatedFrom(date_from).timeCreatedTo(date_to).ORDER(Columns.KEY_CREATED, ORDER.DESC).build().query();
+        if(_layout == Layout.WITHOUT_ROWID && Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP)
+            return Layout.ROWID;
+
+        return _layout;
     }
 
     /**
-     * Select data from a window of identifiers with casted type. useful when ids are timestamps.
-     *
-     * @param idFrom    starting id
-     * @param idTo      last id
-     * @param type      the type
+     * set the physical layout of the table, before it was opened
      *
-     * @return {@link ArrayList} of data
+     * @param layout the {@link Layout}
      */
-    public ArrayList<T> getDataBetweenIdWithType(String idFrom, String idTo, String type)
+    void setLayout(Layout layout)
     {
-        return _queryBuilder.reset().idFrom(idFrom).idTo(idTo).type(type).build().query();
+        _layout       = layout;
+        _idGenerator  = (layout == Layout.INTEGER_KEY) ? new NumericIdGenerator() : null;
     }
 
     /**
-     * Select latest data with limit
-     *
-     * @param limit the max amount of latest objects
+     * get the generator of the identifiers of new data of this table. package protected.
      *
-     * @return {@link ArrayList} of data
+     * @return the {@link IIdGenerator}, or {@code null} to use the one of {@link TriOrm#setIdGenerator(IIdGenerator)}
      */
-    public ArrayList<T> getAllData(int limit)
+    IIdGenerator idGenerator()
     {
-        return _queryBuilder.reset().ORDER(Columns.KEY_ID, ORDER.DESC).LIMIT(limit).build().query();
+        return _idGenerator;
     }
 
     /**
-     * update an already existing data by identifier
+     * get the time partitioning of the table
      *
-     * @param id    the id of the data
-     * @param data  the updated data
-     *
-     * @return the number of rows affected
+     * @return the {@link Partition}
      */
-    public int updateData(String id, T data)
+    public Partition partition()
     {
-        SQLiteDatabase 	db 			= this.getWritableDatabase();
-
-        ContentValues 	values 	= new ContentValues();
-
-        values.put(Columns.KEY_ID.key(),      data.getId());
-        values.put(Columns.KEY_TYPE.key(),    data.getType());
-        values.put(Columns.KEY_DATA.key(),    SSerialize.serializeToByteArray(data));
-        values.put(Columns.KEY_CREATED.key(), data.getTimeCreated());
-
-        // updating row
-        return db.update(TABLE_NAME, values, Columns.KEY_ID.key() + " = ?", new String[] { id });
+        return _partition;
     }
 
     /**
-     * delete data by identifier
+     * set the time partitioning of the table, before it was opened
      *
-     * @param id the id of the data
+     * @param partition the {@link Partition}
      */
-    public void delete(String id)
+    void setPartition(Partition partition)
     {
-        SQLiteDatabase db = this.getWritableDatabase();
-
-        db.delete(TABLE_NAME, Columns.KEY_ID.key() + " = ?", new String[] { id });
-        db.close();
+        _partition  = partition;
+        _partitions = (partition == Partition.NONE) ? null : new TriPartitions(partition, TABLE_NAME);
     }
 
     /**
-     * delete data by identifier
+     * set the page size of a new database file, before it was opened. requires Jelly Bean.
      *
-     * @param data the data of the data
+     * @param pageSize the page size in bytes, a power of two between {@code 512} and {@code 65536}
      */
-    public void delete(T data)
+    void setPageSize(int pageSize)
     {
-        delete(data.getId());
+        _pageSize = pageSize;
     }
 
     /**
-     * delete all of the data
+     * the rows are kept. the database file is shared by all of the tables, therefore this is only called
+     * for the first table that opens it, so only the old version is recorded, and every table migrates
+     * itself on first use.
      */
-    public void deleteAllData()
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion)
     {
-        SQLiteDatabase db = this.getWritableDatabase();
+        TriMeta.recordLegacyVersion(db, oldVersion);
+    }
+
+    /**
+     * create the table and migrate it's rows if it's version is older than the database version.
+     * a partitioned table also migrates every partition, and moves the rows that were written before
+     * it was partitioned into their partitions.
+     * happens once per instance, on the first time the database is opened, and again if that first time was
+     * inside of a transaction that was rolled back.
+     *
+     * @param db the database
+     */
+    private void ensureSchema(SQLiteDatabase db)
+    {
+        if(_schemaReady)
+            return;
+
+        // the files are needed to read the rows, even if the schema can not be written
+        if(!_blobsOpened)
+            openBlobs(db);
+
+        if(db.isReadOnly())
+            return;
+
+        synchronized (this) {
+            if(_schemaReady)
+                return;
+
+            TriMeta.create(db);
+            TriClassDictionary.create(db);
+
+            ensureTable(db, TABLE_NAME);
+
+            if(_partitions != null) {
+                _partitions.create(db);
+
+                for (String partition : _partitions.all(db).values())
+                    ensureTable(db, partition);
+
+                repartition(db);
+            }
+
+            if(_bloomCapacity > 0)
+                rebuildBloomFilter(db);
+
+            // a first use inside of a transaction that is rolled back also rolls back the schema
+            onRollback(new Runnable() {
+                @Override
+                public void run() {
+                    _schemaReady = false;
+
+                    if(_partitions != null)
+                        _partitions.invalidate();
+                }
+            });
+
+            _schemaReady = true;
+
+            // files of rows that were deleted right before the process ended
+            _blobScan.set(true);
+            scheduleBlobSweep();
+        }
+    }
+
+    /**
+     * open the files of the blobs beside the database file, if the table keeps blobs in files, or kept them before
+     *
+     * @param db the database
+     *
+     * @see TriDatabase.Builder#externalBlobs(Class, int)
+     */
+    private synchronized void openBlobs(SQLiteDatabase db)
+    {
+        if(_blobsOpened)
+            return;
+
+        String path = db.getPath();
+
+        if(DATABASE_NAME != null && path != null) {
+            File directory = new File(new File(path).getParentFile(), DATABASE_NAME + "-blobs" + File.separator + TABLE_NAME);
+
+            if(_blobThreshold > 0 || directory.isDirectory())
+                _blobs = new TriBlobStore(directory);
+        }
+
+        _blobsOpened = true;
+    }
+
+    /**
+     * create a physical table and migrate it's rows if it's version is older than the database version
+     *
+     * @param db    the database
+     * @param table the physical table name
+     */
+    private void ensureTable(SQLiteDatabase db, String table)
+    {
+        createTable(db, table);
+
+        int version = TriMeta.version(db, table);
+
+        if(version == -1) {
+            // tables that existed before the meta table are at the legacy version, new ones are up to date
+            version = TriMeta.version(db, TriMeta.KEY_LEGACY);
+            version = (version == -1) ? DATABASE_VERSION : version;
+
+            TriMeta.setVersion(db, table, version);
+        }
+
+        // new indexed columns of an existing table are back filled from the data
+        if(addIndexedColumns(db, table))
+            TriMeta.setProgress(db, table, "");
+
+        String lastId = TriMeta.lastId(db, table);
+
+        if(version < DATABASE_VERSION || lastId != null)
+            migrate(db, table, version, lastId);
+    }
+
+    /**
+     * create a physical table if it does not exist
+     *
+     * @param db    the database
+     * @param table the physical table name
+     */
+    private void createTable(SQLiteDatabase db, String table)
+    {
+        Layout layout = layout();
+
+        String CREATE_TABLE_COMMAND   = "CREATE TABLE IF NOT EXISTS "
+          + table + "("
+          + Columns.KEY_ID.key()      + (layout == Layout.INTEGER_KEY ? " INTEGER PRIMARY KEY, " : " TEXT PRIMARY KEY, ")
+          + Columns.KEY_TYPE.key()    + " STRING, "
+          //+ Columns.KEY_DATA.key()    + " TEXT, "
+          + Columns.KEY_DATA.key()    + " BLOB, "
+          + Columns.KEY_CREATED.key() + " INTEGER";
+
+        for (Map.Entry<String, Field> entry : _indexedFields.entrySet())
+            CREATE_TABLE_COMMAND     += ", " + entry.getKey() + " " + affinity(entry.getValue());
+
+        if(_hashed)
+            CREATE_TABLE_COMMAND     += ", " + KEY_HASH + " INTEGER";
+
+        CREATE_TABLE_COMMAND         += ")" + (layout == Layout.WITHOUT_ROWID ? " WITHOUT ROWID" : "");
+
+        db.execSQL(CREATE_TABLE_COMMAND);
+        createIndex(db, table, Columns.KEY_CREATED.key());
+
+        for (String column : _indexedFields.keySet())
+            createIndex(db, table, column);
+    }
+
+    /**
+     * create an index on a column if it does not exist
+     *
+     * @param db      the database
+     * @param table   the physical table name
+     * @param column  the column
+     */
+    private void createIndex(SQLiteDatabase db, String table, String column)
+    {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + table + "_" + column + " ON " + table + "(" + column + ")");
+    }
+
+    /**
+     * add the indexed columns, and the hash column of dirty checking, that are missing from an existing table.
+     * a table that already has the hash column keeps it up to date.
+     *
+     * @param db    the database
+     * @param table the physical table name
+     *
+     * @return {@code true} if indexed columns were added and need to be back filled
+     */
+    private boolean addIndexedColumns(SQLiteDatabase db, String table)
+    {
+        // the base table is always inspected, it tells if the hash column exists
+        if(_indexedFields.isEmpty() && !_hashed && !table.equals(TABLE_NAME))
+            return false;
+
+        HashSet<String> columns = new HashSet<>();
+        Cursor          cursor  = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+
+        try {
+            while(cursor.moveToNext())
+                columns.add(cursor.getString(1));
+        } finally {
+            cursor.close();
+        }
+
+        boolean added = false;
+
+        for (Map.Entry<String, Field> entry : _indexedFields.entrySet()) {
+            if(columns.contains(entry.getKey()))
+                continue;
+
+            db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + entry.getKey() + " " + affinity(entry.getValue()));
+            createIndex(db, table, entry.getKey());
+
+            added = true;
+        }
+
+        if(columns.contains(KEY_HASH))
+            _hashed = true;
+        else if(_hashed)
+            // unknown hashes, the rows are written on their next save
+            db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + KEY_HASH + " INTEGER");
+
+        return added;
+    }
+
+    /**
+     * the column affinity of an indexed field
+     *
+     * @param field the field
+     *
+     * @return the {@code SQL} type
+     */
+    private static String affinity(Field field)
+    {
+        Class<?> type = field.getType();
+
+        if(type == int.class || type == long.class || type == short.class || type == byte.class || type == boolean.class
+                || type == Integer.class || type == Long.class || type == Short.class || type == Byte.class || type == Boolean.class)
+            return "INTEGER";
+
+        if(type == float.class || type == double.class || type == Float.class || type == Double.class)
+            return "REAL";
+
+        return "TEXT";
+    }
+
+    /**
+     * set the type of the data, before the table was opened. extracts the fields annotated with
+     * {@link com.hendrix.triorm.annotations.TriIndex}.
+     *
+     * @param type the Class type of the data
+     */
+    void setDataType(Class<T> type)
+    {
+        _indexedFields = SReflection.extractIndexedFields(type);
+
+        for (String column : _indexedFields.keySet()) {
+            for (Columns reserved : Columns.values()) {
+                if(reserved.key().equalsIgnoreCase(column))
+                    throw new TableAnnotationException("indexed column " + column + " is reserved, rename it with @TriIndex(name)");
+            }
+
+            if(KEY_HASH.equalsIgnoreCase(column))
+                throw new TableAnnotationException("indexed column " + column + " is reserved, rename it with @TriIndex(name)");
+        }
+    }
+
+    /**
+     * query if a column is an indexed field
+     *
+     * @param column the column name
+     *
+     * @return {@code true/false} if the column is an indexed field
+     */
+    public boolean isIndexedField(String column)
+    {
+        return _indexedFields.containsKey(column);
+    }
+
+    /**
+     * migrate the rows of the table from an older version into the current one, and/or back fill
+     * new indexed columns.
+     * rows are streamed by identifier order in batches of {@link #MIGRATION_BATCH_SIZE}, every batch is
+     * re-encoded in it's own transaction together with the progress, so the table is never loaded into memory
+     * at once, and an interrupted migration resumes from the last committed batch.
+     * rows that can not be de-serialized anymore are left untouched.
+     *
+     * @param db          the database
+     * @param table       the physical table name
+     * @param oldVersion  the version of the rows
+     * @param lastId      the last identifier that was already re-encoded, {@code ""} to start from the first row,
+     *                    or {@code null} if rows only need to be re-encoded by a migration
+     */
+    private void migrate(SQLiteDatabase db, String table, int oldVersion, String lastId)
+    {
+        IMigration<T> migration = (oldVersion < DATABASE_VERSION) ? _migration : null;
+
+        if(migration == null && lastId == null) {
+            TriMeta.setVersion(db, table, DATABASE_VERSION);
+            return;
+        }
+
+        String[]  columns = DATA_PROJECTION;
+        String    limit   = String.valueOf(MIGRATION_BATCH_SIZE);
+
+        while(true) {
+            boolean   first     = (lastId == null || lastId.isEmpty());
+            String    selection = first ? null : Columns.KEY_ID.key() + " > ?";
+            String[]  args      = first ? null : new String[] { lastId };
+
+            Cursor    cursor    = db.query(table, columns, selection, args, null, null, Columns.KEY_ID.key() + " ASC", limit);
+
+            try {
+                if(!cursor.moveToFirst())
+                    break;
+
+                db.beginTransaction();
+
+                boolean success = false;
+
+                try {
+                    do {
+                        String  id    = cursor.getString(1);
+                        T       data;
+
+                        lastId        = id;
+
+                        try {
+                            data = decode(cursor);
+                        } catch (CorruptedDataException e) {
+                            // the row is kept as is, and reports the failure when it is read
+                            continue;
+                        }
+
+                        if(data == null)
+                            continue;
+
+                        T       res   = (migration == null) ? data : migration.migrate(data, oldVersion, DATABASE_VERSION);
+
+                        if(res == null) {
+                            db.delete(table, Columns.KEY_ID.key() + " = ?", new String[] { id });
+
+                            if(_partitions != null)
+                                _partitions.unroute(db, id);
+
+                            continue;
+                        }
+
+                        ContentValues values = toValues(res);
+
+                        // the row keeps it's identifier
+                        values.put(Columns.KEY_ID.key(), id);
+
+                        try {
+                            db.update(table, values, Columns.KEY_ID.key() + " = ?", new String[] { id });
+                        } finally {
+                            release(values);
+                        }
+                    } while (cursor.moveToNext());
+
+                    TriMeta.setProgress(db, table, lastId);
+
+                    db.setTransactionSuccessful();
+
+                    success = true;
+                } finally {
+                    db.endTransaction();
+
+                    // class descriptors that were recorded by the batch were rolled back with it
+                    if(!success && _compact)
+                        _dictionary.restore();
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        TriMeta.setVersion(db, table, DATABASE_VERSION);
+    }
+
+    /**
+     * move the rows of the base table, that were written before the table was partitioned, into their partitions.
+     * the rows are copied as is, without de-serializing them, in batches of {@link #MIGRATION_BATCH_SIZE},
+     * every batch in it's own transaction, so an interrupted move resumes on next open.
+     *
+     * @param db the database
+     */
+    private void repartition(SQLiteDatabase db)
+    {
+        String[]  projection  = new String[] { Columns.KEY_ID.key(), Columns.KEY_CREATED.key() };
+        String    columns     = columnList();
+        String    limit       = String.valueOf(MIGRATION_BATCH_SIZE);
+
+        while(true) {
+            Cursor cursor = db.query(TABLE_NAME, projection, null, null, null, null, null, limit);
+
+            try {
+                if(!cursor.moveToFirst())
+                    break;
+
+                db.beginTransaction();
+
+                boolean success = false;
+
+                try {
+                    do {
+                        String  id      = cursor.getString(0);
+                        long    period  = _partitions.periodOf(cursor.getLong(1));
+                        String  target  = partitionFor(db, period);
+
+                        db.execSQL("INSERT OR REPLACE INTO " + target + " (" + columns + ") SELECT " + columns + " FROM " + TABLE_NAME
+                                   + " WHERE " + Columns.KEY_ID.key() + " = ?", new Object[] { id });
+                        db.delete(TABLE_NAME, Columns.KEY_ID.key() + " = ?", new String[] { id });
+
+                        _partitions.route(db, id, period);
+                    } while (cursor.moveToNext());
+
+                    db.setTransactionSuccessful();
+
+                    success = true;
+                } finally {
+                    db.endTransaction();
+
+                    if(!success)
+                        _partitions.invalidate();
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * the column list of a physical table
+     *
+     * @return the comma separated columns
+     */
+    private String columnList()
+    {
+        return columnList(true);
+    }
+
+    /**
+     * the column list of a physical table
+     *
+     * @param data include the serialized data and it's hash, or only the metadata and the indexed columns
+     *
+     * @return the comma separated columns
+     */
+    private String columnList(boolean data)
+    {
+        StringBuilder sb = new StringBuilder(Columns.KEY_ID.key()).append(", ").append(Columns.KEY_TYPE.key()).append(", ");
+
+        if(data)
+            sb.append(Columns.KEY_DATA.key()).append(", ");
+
+        sb.append(Columns.KEY_CREATED.key());
+
+        for (String column : _indexedFields.keySet())
+            sb.append(", ").append(column);
+
+        if(data && _hashed)
+            sb.append(", ").append(KEY_HASH);
+
+        return sb.toString();
+    }
+
+    /**
+     * get the partition of a period, and create it if it does not exist
+     *
+     * @param db      the database
+     * @param period  the start of the period
+     *
+     * @return the name of the partition
+     */
+    private String partitionFor(SQLiteDatabase db, long period)
+    {
+        String name = _partitions.nameOf(db, period);
+
+        if(name != null)
+            return name;
+
+        name = _partitions.partitionName(period);
+
+        createTable(db, name);
+        TriMeta.setVersion(db, name, DATABASE_VERSION);
+
+        _partitions.add(period, name);
+
+        onRollback(new Runnable() {
+            @Override
+            public void run() {
+                _partitions.invalidate();
+            }
+        });
+
+        return name;
+    }
+
+    /**
+     * drop a whole partition together with it's routes
+     *
+     * @param db      the database
+     * @param period  the start of the period
+     * @param name    the name of the partition
+     *
+     * @return the number of rows dropped
+     */
+    private int dropPartition(SQLiteDatabase db, long period, String name)
+    {
+        int count;
+
+        db.beginTransaction();
+
+        try {
+            count = (int) DatabaseUtils.queryNumEntries(db, name);
+
+            collectBlobs(db, name, null, null);
+
+            db.delete(_partitions.routeName(), TriPartitions.KEY_PERIOD + " = ?", new String[] { String.valueOf(period) });
+
+            // dropping does not fire the triggers that keep the pre-images of a snapshot
+            if(_helper != null && _helper.snapshotting())
+                db.delete(name, null, null);
+
+            db.execSQL("DROP TABLE IF EXISTS " + name);
+
+            TriMeta.remove(db, name);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        _partitions.remove(period);
+
+        onRollback(new Runnable() {
+            @Override
+            public void run() {
+                _partitions.invalidate();
+            }
+        });
+
+        return count;
+    }
+
+    /**
+     * the {@code FROM} source of the rows with a {@code time_created} inside a window. a partitioned table
+     * only reads the partitions that overlap the window, through a {@code UNION ALL} sub query when there
+     * is more than one.
+     *
+     * @param from  the start of the window, {@code -1} for unbounded
+     * @param to    the end of the window, {@code -1} for unbounded
+     *
+     * @return a table name or a sub query
+     */
+    public String source(long from, long to)
+    {
+        if(_partitions == null)
+            return TABLE_NAME;
+
+        SQLiteDatabase db = this.getReadableDatabase();
+
+        return TriPartitions.source(_partitions.overlapping(db, from, to), columnList(), TABLE_NAME);
+    }
+
+    /**
+     * the {@code FROM} source of the metadata and the indexed columns of the rows with a {@code time_created} inside a
+     * window, without the serialized data, so aggregates never read it.
+     *
+     * @param from  the start of the window, {@code -1} for unbounded
+     * @param to    the end of the window, {@code -1} for unbounded
+     *
+     * @return a table name or a sub query
+     *
+     * @see #source(long, long)
+     */
+    public String metadataSource(long from, long to)
+    {
+        if(_partitions == null)
+            return TABLE_NAME;
+
+        SQLiteDatabase db = this.getReadableDatabase();
+
+        return TriPartitions.source(_partitions.overlapping(db, from, to), columnList(false), TABLE_NAME);
+    }
+
+    /**
+     * the table that holds an index of all of the identifiers
+     *
+     * @return the route table of a partitioned table, or the table itself
+     */
+    private String idTable()
+    {
+        return (_partitions != null) ? _partitions.routeName() : TABLE_NAME;
+    }
+
+    /**
+     * decode the data of the current row of a cursor that was queried with {@link #DATA_PROJECTION}.
+     * the indexed columns win over the fields that are embedded in the serialized data, so metadata only
+     * updates are reflected in the loaded data.
+     *
+     * @param cursor the cursor
+     *
+     * @return the data, or {@code null} if it could not be de-serialized
+     *
+     * @throws CorruptedDataException if compact data, or the file of a blob, could not be read
+     */
+    public T decode(Cursor cursor)
+    {
+        T data = deserialize(cursor.getBlob(0));
+
+        if(data == null)
+            return null;
+
+        data.setId(cursor.getString(1));
+        data.setType(cursor.getString(2));
+        data.setTimeCreated(cursor.getLong(3));
+
+        return data;
+    }
+
+    /**
+     * decode the raw row of the current row of a cursor that was queried with {@link #DATA_PROJECTION}, without
+     * de-serializing it. a blob that is kept in a file is mapped, and only compact rows are transcoded into the
+     * standard form, so the row does not depend on this database.
+     *
+     * @param cursor the cursor
+     *
+     * @return the {@link TriRow}, or {@code null} if it has no blob
+     *
+     * @throws CorruptedDataException if the file of the blob could not be read, or a compact blob could not be de-serialized
+     */
+    public TriRow decodeRow(Cursor cursor)
+    {
+        byte[]      blob    = cursor.getBlob(0);
+        ByteBuffer  buffer;
+
+        if(blob == null)
+            return null;
+
+        buffer = TriBlobStore.isReference(blob) ? mapBlob(cursor.getString(1), blob) : ByteBuffer.wrap(blob);
+
+        if(SSerialize.isCompact(buffer)) {
+            T data = SSerialize.deserialize(buffer, _dictionary);
+
+            buffer = ByteBuffer.wrap(SSerialize.serializeToByteArray(data));
+        }
+
+        return new TriRow(cursor.getString(1), cursor.getString(2), cursor.getLong(3), buffer);
+    }
+
+    /**
+     * encode data into the columns of a row
+     *
+     * @param data the data
+     *
+     * @return the {@link ContentValues} of the row
+     */
+    private ContentValues toValues(T data)
+    {
+        return toValues(data, serialize(data));
+    }
+
+    /**
+     * encode data that was already serialized into the columns of a row
+     *
+     * @param data the data
+     * @param blob the serialized data
+     *
+     * @return the {@link ContentValues} of the row
+     */
+    private ContentValues toValues(T data, byte[] blob)
+    {
+        ContentValues 	values 	= new ContentValues();
+
+        values.put(Columns.KEY_ID.key(),      data.getId());
+        values.put(Columns.KEY_TYPE.key(),    data.getType());
+        values.put(Columns.KEY_DATA.key(),    externalize(blob));
+        values.put(Columns.KEY_CREATED.key(), data.getTimeCreated());
+
+        for (Map.Entry<String, Field> entry : _indexedFields.entrySet())
+            putIndexedValue(values, entry.getKey(), entry.getValue(), data);
+
+        putHash(values, blob);
+
+        return values;
+    }
+
+    /**
+     * encode a raw row into the columns of a row, it is only de-serialized when the table has indexed fields
+     *
+     * @param id          the identifier
+     * @param type        the type
+     * @param timeCreated the creation time
+     * @param blob        the data in the standard serialized form
+     *
+     * @return the {@link ContentValues} of the row
+     */
+    private ContentValues toValues(String id, String type, long timeCreated, byte[] blob)
+    {
+        ContentValues values = new ContentValues();
+
+        values.put(Columns.KEY_ID.key(),      id);
+        values.put(Columns.KEY_TYPE.key(),    type);
+        values.put(Columns.KEY_DATA.key(),    externalize(blob));
+        values.put(Columns.KEY_CREATED.key(), timeCreated);
+
+        T data = _indexedFields.isEmpty() ? null : deserialize(blob);
+
+        if(data != null) {
+            for (Map.Entry<String, Field> entry : _indexedFields.entrySet())
+                putIndexedValue(values, entry.getKey(), entry.getValue(), data);
+        }
+
+        putHash(values, blob);
+
+        return values;
+    }
+
+    /**
+     * put the hash of the serialized data into the values of a row, if the table has the hash column
+     *
+     * @param values  the values
+     * @param blob    the serialized data, before it was kept in a file
+     */
+    private void putHash(ContentValues values, byte[] blob)
+    {
+        if(!_hashed)
+            return;
+
+        if(blob == null)
+            values.putNull(KEY_HASH);
+        else
+            values.put(KEY_HASH, hash(blob));
+    }
+
+    /**
+     * a 64 bit hash of serialized data, {@code FNV-1a} with a final avalanche
+     *
+     * @param blob the serialized data
+     *
+     * @return the hash
+     */
+    private static long hash(byte[] blob)
+    {
+        long hash = 0xcbf29ce484222325L ^ blob.length;
+
+        for (byte b : blob)
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+
+    /**
+     * query if the row of data already holds it's serialized form and metadata, so writing it again changes nothing.
+     * the database is the source of truth, so a row that was written since, or whose hash is unknown, is written.
+     *
+     * @param db          the database
+     * @param id          the identifier
+     * @param type        the type
+     * @param timeCreated the creation time
+     * @param blob        the serialized data
+     *
+     * @return {@code true} if the write can be skipped
+     *
+     * @see TriDatabase.Builder#dirtyChecking(Class)
+     */
+    private boolean isPersisted(SQLiteDatabase db, String id, String type, long timeCreated, byte[] blob)
+    {
+        _checkedWrites.incrementAndGet();
+
+        String table = (_partitions != null) ? _partitions.routeOf(db, id) : TABLE_NAME;
+
+        if(table == null || blob == null)
+            return false;
+
+        Cursor cursor = db.query(table, new String[] { KEY_HASH, Columns.KEY_TYPE.key(), Columns.KEY_CREATED.key() },
+                                 Columns.KEY_ID.key() + " = ?", new String[] { id }, null, null, null);
+
+        try {
+            if(!cursor.moveToFirst() || cursor.isNull(0) || cursor.getLong(0) != hash(blob) || cursor.getLong(2) != timeCreated)
+                return false;
+
+            String current = cursor.getString(1);
+
+            if(current == null ? type != null : !current.equals(type))
+                return false;
+        } finally {
+            cursor.close();
+        }
+
+        _skippedWrites.incrementAndGet();
+
+        return true;
+    }
+
+    /**
+     * serialize data in the form of the table
+     *
+     * @param data the data
+     *
+     * @return the serialized data, compact if the table is
+     *
+     * @see TriDatabase.Builder#compactSerialization(Class)
+     */
+    private byte[] serialize(T data)
+    {
+        return _compact ? SSerialize.serializeToByteArray(data, _dictionary) : SSerialize.serializeToByteArray(data);
+    }
+
+    /**
+     * keep a blob that is above the threshold of the table in a file. the file is pending until the values are
+     * {@link #release(ContentValues) released}, and blobs that can not be written to a file are kept in the row.
+     *
+     * @param blob the serialized data
+     *
+     * @return a reference of the file, or the blob itself
+     *
+     * @see TriDatabase.Builder#externalBlobs(Class, int)
+     */
+    private byte[] externalize(byte[] blob)
+    {
+        if(_blobs == null || _blobThreshold <= 0 || blob == null || blob.length <= _blobThreshold)
+            return blob;
+
+        try {
+            return _blobs.write(blob);
+        } catch (IOException e) {
+            return blob;
+        }
+    }
+
+    /**
+     * release the file of the values of a row, after the statement that wrote them returned. the file is a candidate
+     * of the next sweep, in case the statement did not write the row or is rolled back.
+     *
+     * @param values the values
+     */
+    private void release(ContentValues values)
+    {
+        if(_blobs == null)
+            return;
+
+        byte[] blob = values.getAsByteArray(Columns.KEY_DATA.key());
+
+        _blobs.release(blob);
+        _blobs.candidate(values.getAsString(Columns.KEY_ID.key()), blob);
+    }
+
+    /**
+     * @return {@code true} if rows may refer to files, so the references of replaced and deleted rows are collected
+     */
+    private boolean collectsBlobs()
+    {
+        return _blobs != null && _blobs.hasFiles();
+    }
+
+    /**
+     * collect the references of rows that are about to be replaced or deleted, as candidates of the next sweep.
+     * must be called in the transaction of the write, so the sweep only checks them after it.
+     *
+     * @param db            the database
+     * @param table         the physical table name
+     * @param selection     the selection of the rows, {@code null} for all of the rows
+     * @param selectionArgs the arguments of the selection, may be {@code null}
+     */
+    private void collectBlobs(SQLiteDatabase db, String table, String selection, String[] selectionArgs)
+    {
+        if(!collectsBlobs())
+            return;
+
+        Cursor cursor = db.rawQuery("SELECT " + Columns.KEY_ID.key() + ", " + Columns.KEY_DATA.key() + " FROM " + table
+                                    + " WHERE length(" + Columns.KEY_DATA.key() + ") <= " + TriBlobStore.MAX_REFERENCE_LENGTH
+                                    + (selection == null ? "" : " AND (" + selection + ")"), selectionArgs);
+
+        try {
+            while(cursor.moveToNext())
+                _blobs.candidate(cursor.getString(0), cursor.getBlob(1));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * insert a row into the base table, the file of a replaced row is collected
+     *
+     * @param db                the database
+     * @param values            the values of the row
+     * @param conflictAlgorithm the conflict algorithm
+     */
+    private void insertRow(SQLiteDatabase db, ContentValues values, int conflictAlgorithm)
+    {
+        if(conflictAlgorithm != SQLiteDatabase.CONFLICT_REPLACE || !collectsBlobs()) {
+            db.insertWithOnConflict(TABLE_NAME, null, values, conflictAlgorithm);
+            return;
+        }
+
+        db.beginTransaction();
+
+        try {
+            collectBlobs(db, TABLE_NAME, Columns.KEY_ID.key() + " = ?", new String[] { values.getAsString(Columns.KEY_ID.key()) });
+
+            db.insertWithOnConflict(TABLE_NAME, null, values, conflictAlgorithm);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * delete rows of a physical table, the files of the deleted rows are collected
+     *
+     * @param db            the database
+     * @param table         the physical table name
+     * @param selection     the selection of the rows, {@code null} for all of the rows
+     * @param selectionArgs the arguments of the selection, may be {@code null}
+     *
+     * @return the number of rows deleted
+     */
+    private int deleteRows(SQLiteDatabase db, String table, String selection, String[] selectionArgs)
+    {
+        if(!collectsBlobs())
+            return db.delete(table, selection, selectionArgs);
+
+        db.beginTransaction();
+
+        try {
+            collectBlobs(db, table, selection, selectionArgs);
+
+            int count = db.delete(table, selection, selectionArgs);
+
+            db.setTransactionSuccessful();
+
+            return count;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * de-serialize data of any form, blobs that are kept in files are read through a memory mapping
+     *
+     * @param blob the serialized data, or a reference of a file
+     *
+     * @return the data, or {@code null} if standard data in the row could not be de-serialized
+     *
+     * @throws CorruptedDataException if the file of a reference could not be read, or the data in it could not be de-serialized
+     */
+    private T deserialize(byte[] blob)
+    {
+        if(!TriBlobStore.isReference(blob))
+            return SSerialize.deserialize(blob, _dictionary);
+
+        return SSerialize.deserialize(mapBlob(null, blob), _dictionary);
+    }
+
+    /**
+     * map the file of a reference into memory
+     *
+     * @param id        the identifier of the row, for the report, may be {@code null}
+     * @param reference the reference
+     *
+     * @return the read only content
+     *
+     * @throws CorruptedDataException if the file is missing, or could not be read
+     */
+    private ByteBuffer mapBlob(String id, byte[] reference)
+    {
+        TriBlobStore blobs = _blobs;
+
+        if(blobs == null)
+            throw new CorruptedDataException("the row " + (id == null ? "" : id + " ") + "of table " + TABLE_NAME
+                                             + " refers to a blob file, but the table has no blob files");
+
+        try {
+            return blobs.map(reference);
+        } catch (IOException e) {
+            throw new CorruptedDataException("the blob file " + TriBlobStore.nameOf(reference) + " of table " + TABLE_NAME
+                                             + " could not be read", e);
+        }
+    }
+
+    /**
+     * get the standard form of serialized data, that does not depend on the class dictionary or the files of this database
+     *
+     * @param blob the serialized data, or a reference of a file
+     *
+     * @return the standard form, or the blob itself if it is standard or could not be de-serialized
+     *
+     * @throws CorruptedDataException if the file of a reference could not be read, or compact data could not be de-serialized
+     */
+    private byte[] portable(byte[] blob)
+    {
+        if(TriBlobStore.isReference(blob)) {
+            ByteBuffer buffer = mapBlob(null, blob);
+
+            blob = new byte[buffer.remaining()];
+            buffer.get(blob);
+        }
+
+        if(!SSerialize.isCompact(blob))
+            return blob;
+
+        T data = deserialize(blob);
+
+        return (data == null) ? blob : SSerialize.serializeToByteArray(data);
+    }
+
+    /**
+     * put the value of an indexed field into the values of a row
+     *
+     * @param values  the values
+     * @param column  the column
+     * @param field   the indexed field
+     * @param data    the data
+     */
+    private static void putIndexedValue(ContentValues values, String column, Field field, Object data)
+    {
+        Object value;
+
+        try {
+            value = field.get(data);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+
+        if(value == null)
+            values.putNull(column);
+        else if(value instanceof Float || value instanceof Double)
+            values.put(column, ((Number) value).doubleValue());
+        else if(value instanceof Number)
+            values.put(column, ((Number) value).longValue());
+        else if(value instanceof Boolean)
+            values.put(column, ((Boolean) value) ? 1L : 0L);
+        else if(value instanceof Enum)
+            values.put(column, ((Enum) value).name());
+        else
+            values.put(column, value.toString());
+    }
+
+    /**
+     * add/replace new/older data, or update an older one with the correct conflict algorithm
+     *
+     * @param data the data
+     */
+    public void addData(T data)
+    {
+        addDataWithConflict(data, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * add new data, or update an older one with the correct conflict algorithm
+     *
+     * @param data              the data
+     * @param conflictAlgorithm for example <code>SQLiteDatabase.CONFLICT_REPLACE</code>
+     *
+     */
+    public void addDataWithConflict(T data, int conflictAlgorithm)
+    {
+        SQLiteDatabase 	db 			= this.getWritableDatabase();
+
+        byte[]          blob    = serialize(data);
+
+        if(data.getId() == null)
+            throw new NullPointerException("data.getId() = null");
+
+        // replacing or ignoring an identical row changes nothing
+        boolean         skips   = conflictAlgorithm == SQLiteDatabase.CONFLICT_REPLACE || conflictAlgorithm == SQLiteDatabase.CONFLICT_IGNORE;
+
+        if(_dirtyChecking && skips && isPersisted(db, data.getId(), data.getType(), data.getTimeCreated(), blob))
+            return;
+
+        ContentValues 	values 	= toValues(data, blob);
+
+        // Inserting Row
+        try {
+            if(_partitions != null)
+                insertPartitioned(db, values, conflictAlgorithm);
+            else
+                insertRow(db, values, conflictAlgorithm);
+        } finally {
+            release(values);
+        }
+
+        onIdAdded(data.getId());
+
+        // a replaced row may have kept it's blob in a file
+        if(conflictAlgorithm == SQLiteDatabase.CONFLICT_REPLACE)
+            scheduleBlobSweep();
+    }
+
+    /**
+     * add/replace a raw row, without de-serializing it, unless the table has indexed fields
+     *
+     * @param row the row, with a blob in the standard serialized form
+     *
+     * @see #addRowWithConflict(TriRow, int)
+     */
+    public void addRow(TriRow row)
+    {
+        addRowWithConflict(row, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * add a raw row with a conflict algorithm. the blob is written as is, into the row or into a file, it is only
+     * de-serialized when the table has indexed fields. a compact table keeps it in the standard form until it is saved again.
+     *
+     * @param row               the row, with a blob in the standard serialized form
+     * @param conflictAlgorithm for example <code>SQLiteDatabase.CONFLICT_REPLACE</code>
+     *
+     * @throws IllegalArgumentException if the blob is missing, or is not in the standard serialized form
+     */
+    public void addRowWithConflict(TriRow row, int conflictAlgorithm)
+    {
+        SQLiteDatabase  db      = this.getWritableDatabase();
+
+        byte[]          blob    = row.getBlob();
+
+        if(row.getId() == null)
+            throw new NullPointerException("row.getId() = null");
+
+        // compact rows and references only have a meaning in the database they were read from
+        if(blob == null || SSerialize.isCompact(blob) || TriBlobStore.isReference(blob))
+            throw new IllegalArgumentException("TriOrm - the blob of row " + row.getId() + " is not in the standard serialized form");
+
+        boolean         skips   = conflictAlgorithm == SQLiteDatabase.CONFLICT_REPLACE || conflictAlgorithm == SQLiteDatabase.CONFLICT_IGNORE;
+
+        if(_dirtyChecking && skips && isPersisted(db, row.getId(), row.getType(), row.getTimeCreated(), blob))
+            return;
+
+        ContentValues   values  = toValues(row.getId(), row.getType(), row.getTimeCreated(), blob);
+
+        try {
+            if(_partitions != null)
+                insertPartitioned(db, values, conflictAlgorithm);
+            else
+                insertRow(db, values, conflictAlgorithm);
+        } finally {
+            release(values);
+        }
+
+        onIdAdded(row.getId());
+
+        if(conflictAlgorithm == SQLiteDatabase.CONFLICT_REPLACE)
+            scheduleBlobSweep();
+    }
+
+    /**
+     * insert a row into the partition of it's {@code time_created}. a row that exists in another partition moves,
+     * unless the conflict algorithm keeps the existing row.
+     *
+     * @param db                the database
+     * @param values            the values of the row
+     * @param conflictAlgorithm the conflict algorithm
+     */
+    private void insertPartitioned(SQLiteDatabase db, ContentValues values, int conflictAlgorithm)
+    {
+        String  id      = values.getAsString(Columns.KEY_ID.key());
+        long    period  = _partitions.periodOf(values.getAsLong(Columns.KEY_CREATED.key()));
+
+        db.beginTransaction();
+
+        boolean success = false;
+
+        try {
+            String  target  = partitionFor(db, period);
+            String  current = _partitions.routeOf(db, id);
+            boolean write   = true;
+
+            // the replaced row, in any partition
+            if(current != null && conflictAlgorithm == SQLiteDatabase.CONFLICT_REPLACE)
+                collectBlobs(db, current, Columns.KEY_ID.key() + " = ?", new String[] { id });
+
+            if(current != null && !current.equals(target)) {
+                write = (conflictAlgorithm == SQLiteDatabase.CONFLICT_REPLACE);
+
+                if(write)
+                    db.delete(current, Columns.KEY_ID.key() + " = ?", new String[] { id });
+            }
+
+            if(write && db.insertWithOnConflict(target, null, values, conflictAlgorithm) != -1 && !target.equals(current))
+                _partitions.route(db, id, period);
+
+            db.setTransactionSuccessful();
+
+            success = true;
+        } finally {
+            db.endTransaction();
+
+            if(!success)
+                _partitions.invalidate();
+        }
+    }
+
+    /**
+     * general get data
+     *
+     * @return {@link ArrayList} of data
+     */
+    synchronized public ArrayList<T> getData( String idFrom, String idTo,
+                                              String type, long createdFrom, long createdTo)
+    {
+        return _queryBuilder.reset().idFrom(idFrom).idTo(idTo).type(type).timeCreatedFrom(createdFrom).timeCreatedTo(createdTo).ORDER(Columns.KEY_CREATED, ORDER.DESC).build().query();
+    }
+
+    /**
+     * Select data by it's identifier
+     *
+     * @param id the id of the data
+     * @return the data
+     */
+    public T getData(String id)
+    {
+        SQLiteDatabase 	db 			= this.getReadableDatabase();
+
+        String          table   = (_partitions != null) ? _partitions.routeOf(db, id) : TABLE_NAME;
+
+        if(table == null)
+            return null;
+
+        Cursor 					cursor 	= db.query(table, DATA_PROJECTION, Columns.KEY_ID.key() + "=?", new String[] { String.valueOf(id) }, null, null, null, null);
+
+        if(cursor==null)
+            return null;
+
+        if(!cursor.moveToFirst()) {
+            cursor.close();
+            return null;
+        }
+
+        T res                   = decode(cursor);
+
+        cursor.close();
+
+        return res;
+    }
+
+    /**
+     * Select a raw row by it's identifier, without de-serializing it
+     *
+     * @param id the id of the data
+     *
+     * @return the {@link TriRow}, or {@code null} if it does not exist
+     *
+     * @see #decodeRow(Cursor)
+     */
+    public TriRow getRow(String id)
+    {
+        SQLiteDatabase  db      = this.getReadableDatabase();
+
+        String          table   = (_partitions != null) ? _partitions.routeOf(db, id) : TABLE_NAME;
+
+        if(table == null)
+            return null;
+
+        Cursor          cursor  = db.query(table, DATA_PROJECTION, Columns.KEY_ID.key() + "=?", new String[] { String.valueOf(id) }, null, null, null, null);
+
+        try {
+            return cursor.moveToFirst() ? decodeRow(cursor) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Select data set by a collection of identifiers, with chunked {@code IN (...)} queries instead of a query per identifier.
+     *
+     * @param ids the identifiers
+     *
+     * @return {@link ArrayList} of data in the order of the identifiers, with {@code null} for identifiers that do not exist
+     */
+    public ArrayList<T> getData(Collection<String> ids)
+    {
+        HashMap<String, T>  found   = new HashMap<>(ids.size());
+        ArrayList<String>   chunk   = new ArrayList<>(MULTI_GET_CHUNK_SIZE);
+
+        for (String id : new LinkedHashSet<>(ids)) {
+            if(id == null)
+                continue;
+
+            chunk.add(id);
+
+            if(chunk.size() == MULTI_GET_CHUNK_SIZE) {
+                getDataChunk(chunk, found);
+                chunk.clear();
+            }
+        }
+
+        if(!chunk.isEmpty())
+            getDataChunk(chunk, found);
+
+        ArrayList<T> res = new ArrayList<>(ids.size());
+
+        for (String id : ids)
+            res.add(found.get(id));
+
+        return res;
+    }
+
+    /**
+     * select a chunk of identifiers with a single {@code IN (...)} query, a partitioned table
+     * resolves the partitions through the route table first, and queries every partition once.
+     *
+     * @param ids   the identifiers
+     * @param found the found data by identifier
+     */
+    private void getDataChunk(ArrayList<String> ids, HashMap<String, T> found)
+    {
+        SQLiteDatabase  db      = this.getReadableDatabase();
+
+        if(_partitions == null) {
+            getDataChunk(db, TABLE_NAME, ids, found);
+            return;
+        }
+
+        HashMap<String, ArrayList<String>>  byPartition = new HashMap<>();
+        Cursor                              cursor      = db.query(_partitions.routeName(), new String[] { Columns.KEY_ID.key(), TriPartitions.KEY_PERIOD },
+                                                                   inSelection(ids.size()), ids.toArray(new String[ids.size()]), null, null, null);
+
+        try {
+            while(cursor.moveToNext()) {
+                String partition = _partitions.nameOf(db, cursor.getLong(1));
+
+                if(partition == null)
+                    continue;
+
+                if(!byPartition.containsKey(partition))
+                    byPartition.put(partition, new ArrayList<String>());
+
+                byPartition.get(partition).add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        for (Map.Entry<String, ArrayList<String>> entry : byPartition.entrySet())
+            getDataChunk(db, entry.getKey(), entry.getValue(), found);
+    }
+
+    /**
+     * the selection of a {@code IN (...)} query of identifiers
+     *
+     * @param count the amount of identifiers
+     *
+     * @return the {@code SQL} selection
+     */
+    private static String inSelection(int count)
+    {
+        StringBuilder selection = new StringBuilder(Columns.KEY_ID.key()).append(" IN (");
+
+        for (int ix = 0; ix < count; ix++)
+            selection.append(ix == 0 ? "?" : ",?");
+
+        return selection.append(")").toString();
+    }
+
+    /**
+     * select a chunk of identifiers from a physical table with a single {@code IN (...)} query
+     *
+     * @param db    the database
+     * @param table the physical table name
+     * @param ids   the identifiers
+     * @param found the found data by identifier
+     */
+    private void getDataChunk(SQLiteDatabase db, String table, ArrayList<String> ids, HashMap<String, T> found)
+    {
+        Cursor          cursor  = db.query(table, DATA_PROJECTION, inSelection(ids.size()), ids.toArray(new String[ids.size()]), null, null, null);
+
+        try {
+            while(cursor.moveToNext()) {
+                T data = decode(cursor);
+
+                if(data != null)
+                    found.put(cursor.getString(1), data);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Select data set by it's type
+     *
+     * @param type the type of the data
+     *
+     * @return {@link ArrayList} of data
+     */
+    public ArrayList<T> getDataByType(String type)
+    {
+        return _queryBuilder.reset().type(type).build().query();
+    }
+
+    /**
+     * Select data from a window of identifiers. useful when ids are timestamps.
+     * requires QA.
+     *
+     * @param idFrom    starting id
+     * @param idTo      last id
+     *
+     * @return {@link ArrayList} of data
+     */
+    public ArrayList<T> getDataBetweenId(String idFrom, String idTo)
+    {
+        return _queryBuilder.reset().idFrom(idFrom).idTo(idTo).build().query();
+    }
+
+    /**
+     * Select data from a window of time_created with projected type requires QA.
+     *
+     * @param date_from time_created start
+     * @param date_to   time_created end
+     * @param type      the type
+     *
+     * @return {@link ArrayList} of data
+     */
+    public ArrayList<T> getDataBetweenDateWithType(long date_from, long date_to, String type)
+    {
+        return _queryBuilder.reset().timeCreatedFrom(date_from).timeCreatedTo(date_to).type(type).ORDER(Columns.KEY_CREATED, ORDER.DESC).build().query();
+    }
+
+    /**
+     * Select data from a window of time_created with projected type requires QA.
+     *
+     * @param date_from time_created start
+     * @param date_to   time_created end
+     *
+     * @return {@link ArrayList} of data
+     */
+    public ArrayList<T> getDataBetweenDate(long date_from, long date_to)
+    {
+        return _queryBuilder.reset().timeCreatedFrom(date_from).timeCreatedTo(date_to).ORDER(Columns.KEY_CREATED, ORDER.DESC).build().query();
+    }
+
+    /**
+     * Select data from a window of identifiers with casted type. useful when ids are timestamps.
+     *
+     * @param idFrom    starting id
+     * @param idTo      last id
+     * @param type      the type
+     *
+     * @return {@link ArrayList} of data
+     */
+    public ArrayList<T> getDataBetweenIdWithType(String idFrom, String idTo, String type)
+    {
+        return _queryBuilder.reset().idFrom(idFrom).idTo(idTo).type(type).build().query();
+    }
+
+    /**
+     * Select latest data with limit
+     *
+     * @param limit the max amount of latest objects
+     *
+     * @return {@link ArrayList} of data
+     */
+    public ArrayList<T> getAllData(int limit)
+    {
+        return _queryBuilder.reset().ORDER(Columns.KEY_ID, ORDER.DESC).LIMIT(limit).build().query();
+    }
+
+    /**
+     * update an already existing data by identifier
+     *
+     * @param id    the id of the data
+     * @param data  the updated data
+     *
+     * @return the number of rows affected
+     */
+    public int updateData(String id, T data)
+    {
+        SQLiteDatabase 	db 			= this.getWritableDatabase();
+
+        byte[]          blob    = serialize(data);
+
+        // the row exists, and is left as is
+        if(_dirtyChecking && id != null && id.equals(data.getId()) && isPersisted(db, id, data.getType(), data.getTimeCreated(), blob))
+            return 1;
+
+        ContentValues 	values 	= toValues(data, blob);
+
+        try {
+            if(_partitions != null)
+                return onUpdated(updatePartitioned(db, id, values));
+
+            // updating row
+            return onUpdated(updateRow(db, id, values));
+        } finally {
+            release(values);
+
+            scheduleBlobSweep();
+        }
+    }
+
+    /**
+     * update an existing row of the base table, the file of the old row is collected
+     *
+     * @param db      the database
+     * @param id      the id of the data
+     * @param values  the values of the updated row
+     *
+     * @return the number of rows affected
+     */
+    private int updateRow(SQLiteDatabase db, String id, ContentValues values)
+    {
+        String    selection = Columns.KEY_ID.key() + " = ?";
+        String[]  args      = new String[] { id };
+
+        if(!collectsBlobs())
+            return db.update(TABLE_NAME, values, selection, args);
+
+        db.beginTransaction();
+
+        try {
+            collectBlobs(db, TABLE_NAME, selection, args);
+
+            int count = db.update(TABLE_NAME, values, selection, args);
+
+            db.setTransactionSuccessful();
+
+            return count;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * update an existing row of a partitioned table, it moves to the partition of it's new {@code time_created}
+     *
+     * @param db      the database
+     * @param id      the id of the data
+     * @param values  the values of the updated row
+     *
+     * @return the number of rows affected
+     */
+    private int updatePartitioned(SQLiteDatabase db, String id, ContentValues values)
+    {
+        db.beginTransaction();
+
+        try {
+            String current = _partitions.routeOf(db, id);
+
+            if(current == null) {
+                db.setTransactionSuccessful();
+
+                return 0;
+            }
+
+            deleteRows(db, current, Columns.KEY_ID.key() + " = ?", new String[] { id });
+            _partitions.unroute(db, id);
+
+            insertPartitioned(db, values, SQLiteDatabase.CONFLICT_REPLACE);
+
+            db.setTransactionSuccessful();
+
+            return 1;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * update only the indexed type and/or time_created columns of a data by identifier, without
+     * re-serializing it. the loaded data reflects the new values.
+     *
+     * @param id            the id of the data
+     * @param type          the new type, or {@code null} to leave it as is
+     * @param timeCreated   the new creation time, or {@code -1} to leave it as is
+     *
+     * @return the number of rows affected
+     */
+    public int updateMetadata(String id, String type, long timeCreated)
+    {
+        return updateBySelection(type, timeCreated, Columns.KEY_ID.key() + " = ?", new String[] { id });
+    }
+
+    /**
+     * delete data by identifier
+     *
+     * @param id the id of the data
+     */
+    public void delete(String id)
+    {
+        SQLiteDatabase db = this.getWritableDatabase();
+
+        if(_partitions == null) {
+            onDeleted(deleteRows(db, TABLE_NAME, Columns.KEY_ID.key() + " = ?", new String[] { id }));
+            return;
+        }
+
+        db.beginTransaction();
+
+        try {
+            String current = _partitions.routeOf(db, id);
+
+            if(current != null) {
+                onDeleted(deleteRows(db, current, Columns.KEY_ID.key() + " = ?", new String[] { id }));
+
+                _partitions.unroute(db, id);
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * delete data by identifier
+     *
+     * @param data the data of the data
+     */
+    public void delete(T data)
+    {
+        delete(data.getId());
+    }
+
+    /**
+     * delete the data selected by a {@code SQL} selection with a single statement
+     *
+     * @param selection the {@code WHERE} clause, {@code null} deletes all of the data
+     *
+     * @return the number of rows deleted
+     *
+     * @see com.hendrix.triorm.query.TriQuery#delete()
+     */
+    public int deleteBySelection(String selection)
+    {
+        SQLiteDatabase db = this.getWritableDatabase();
+
+        if(_partitions == null)
+            return onDeleted(deleteRows(db, TABLE_NAME, selection, null));
+
+        int count = 0;
+
+        db.beginTransaction();
+
+        try {
+            for (String partition : selectIds(db, selection, null))
+                count += deleteRows(db, partition, SELECTED_IDS_SELECTION, null);
+
+            db.delete(_partitions.routeName(), SELECTED_IDS_SELECTION, null);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return onDeleted(count);
+    }
+
+    /**
+     * the temporary table of the identifiers selected by a set based write on a partitioned table
+     */
+    private static final String SELECTED_IDS = "temp.triorm_selected_ids";
+
+    /**
+     * the selection of the rows whose identifiers were selected into {@link #SELECTED_IDS}
+     */
+    private static final String SELECTED_IDS_SELECTION = Columns.KEY_ID.key() + " IN (SELECT " + Columns.KEY_ID.key() + " FROM " + SELECTED_IDS + ")";
+
+    /**
+     * select the identifiers of a selection over all of the partitions into {@link #SELECTED_IDS} once, so a set
+     * based write applies to the same rows in every partition, even when it's selection has a {@code LIMIT}.
+     * should be called in the transaction of the write.
+     *
+     * @param db            the database
+     * @param selection     the {@code WHERE} clause, {@code null} selects all of the data
+     * @param selectionArgs the arguments of the selection, may be {@code null}
+     *
+     * @return the names of the partitions that hold the selected identifiers
+     */
+    private ArrayList<String> selectIds(SQLiteDatabase db, String selection, String[] selectionArgs)
+    {
+        db.execSQL("CREATE TEMP TABLE IF NOT EXISTS triorm_selected_ids(" + Columns.KEY_ID.key() + " PRIMARY KEY)");
+        db.execSQL("DELETE FROM " + SELECTED_IDS);
+        db.execSQL("INSERT OR IGNORE INTO " + SELECTED_IDS + " SELECT " + Columns.KEY_ID.key() + " FROM " + source(-1L, -1L)
+                   + (selection == null ? "" : " WHERE " + selection), (selectionArgs == null) ? new Object[0] : selectionArgs);
+
+        ArrayList<String> partitions = new ArrayList<>();
+        Cursor            cursor     = db.rawQuery("SELECT DISTINCT " + TriPartitions.KEY_PERIOD + " FROM " + _partitions.routeName()
+                                                   + " WHERE " + SELECTED_IDS_SELECTION, null);
+
+        try {
+            while(cursor.moveToNext()) {
+                String partition = _partitions.nameOf(db, cursor.getLong(0));
+
+                if(partition != null)
+                    partitions.add(partition);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return partitions;
+    }
+
+    /**
+     * update the type and/or time_created columns of the data selected by a {@code SQL} selection with a single statement,
+     * without re-serializing the data. the loaded data reflects the new values.
+     *
+     * @param type          the new type, or {@code null} to leave it as is
+     * @param timeCreated   the new creation time, or {@code -1} to leave it as is
+     * @param selection     the {@code WHERE} clause, {@code null} updates all of the data
+     *
+     * @return the number of rows updated
+     *
+     * @see com.hendrix.triorm.query.TriQuery#update(String, long)
+     */
+    public int updateBySelection(String type, long timeCreated, String selection)
+    {
+        return updateBySelection(type, timeCreated, selection, null);
+    }
+
+    private int updateBySelection(String type, long timeCreated, String selection, String[] selectionArgs)
+    {
+        ContentValues values = new ContentValues();
+
+        if(type != null)
+            values.put(Columns.KEY_TYPE.key(), type);
+
+        if(timeCreated >= 0)
+            values.put(Columns.KEY_CREATED.key(), timeCreated);
+
+        if(values.size() == 0)
+            return 0;
+
+        SQLiteDatabase db = this.getWritableDatabase();
+
+        if(_partitions == null)
+            return onUpdated(db.update(TABLE_NAME, values, selection, selectionArgs));
+
+        int count = 0;
+
+        db.beginTransaction();
+
+        try {
+            ArrayList<String> partitions = selectIds(db, selection, selectionArgs);
+
+            if(timeCreated < 0) {
+                for (String partition : partitions)
+                    count += db.update(partition, values, SELECTED_IDS_SELECTION, null);
+            }
+            else {
+                long    period  = _partitions.periodOf(timeCreated);
+                String  target  = partitionFor(db, period);
+
+                // the rows that are already in the target partition are updated in place, before others move into it
+                if(partitions.remove(target))
+                    count += db.update(target, values, SELECTED_IDS_SELECTION, null);
+
+                count += movePartitioned(db, partitions, target, type, timeCreated);
+
+                ContentValues route = new ContentValues();
+
+                route.put(TriPartitions.KEY_PERIOD, period);
+
+                db.update(_partitions.routeName(), route, SELECTED_IDS_SELECTION, null);
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return onUpdated(count);
+    }
+
+    /**
+     * move the selected rows of partitions into a target partition, with a new {@code time_created} and
+     * optionally a new type, without de-serializing them
+     *
+     * @param db          the database
+     * @param partitions  the partitions that hold selected rows
+     * @param target      the target partition
+     * @param type        the new type, or {@code null} to leave it as is
+     * @param timeCreated the new creation time
+     *
+     * @return the number of rows moved
+     */
+    private int movePartitioned(SQLiteDatabase db, ArrayList<String> partitions, String target, String type, long timeCreated)
+    {
+        String            columns = columnList();
+        StringBuilder     select  = new StringBuilder(Columns.KEY_ID.key()).append(", ")
+                                          .append(type == null ? Columns.KEY_TYPE.key() : "?").append(", ")
+                                          .append(Columns.KEY_DATA.key()).append(", ?");
+        ArrayList<Object> args    = new ArrayList<>();
+
+        for (String column : _indexedFields.keySet())
+            select.append(", ").append(column);
+
+        // the data is not touched, so it's hash still holds
+        if(_hashed)
+            select.append(", ").append(KEY_HASH);
+
+        if(type != null)
+            args.add(type);
+
+        args.add(timeCreated);
+
+        int count = 0;
+
+        for (String partition : partitions) {
+            db.execSQL("INSERT OR REPLACE INTO " + target + " (" + columns + ") SELECT " + select + " FROM " + partition
+                       + " WHERE " + SELECTED_IDS_SELECTION, args.toArray());
+
+            count += db.delete(partition, SELECTED_IDS_SELECTION, null);
+        }
+
+        return count;
+    }
+
+    /**
+     * delete all of the data
+     */
+    public void deleteAllData()
+    {
+        SQLiteDatabase db = this.getWritableDatabase();
+
+        if(_partitions == null) {
+            onDeleted(deleteRows(db, TABLE_NAME, null, null));
+            return;
+        }
+
+        int count = 0;
+
+        db.beginTransaction();
+
+        try {
+            for (Map.Entry<Long, String> entry : _partitions.all(db).entrySet())
+                count += dropPartition(db, entry.getKey(), entry.getValue());
+
+            db.delete(_partitions.routeName(), null, null);
+            count += deleteRows(db, TABLE_NAME, null, null);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        onDeleted(count);
+    }
+
+    /**
+     * stream all of the rows of the table into a channel, without de-serializing them. rows are read by identifier order
+     * in batches of {@link #MIGRATION_BATCH_SIZE}, so the table is never loaded into memory at once. rows that are written
+     * while exporting may or may not be included. compact rows are the exception, they are written in the standard form,
+     * so the export does not depend on the class dictionary of this database.
+     *
+     * @param channel the channel, it is not closed
+     *
+     * @return the number of rows exported
+     *
+     * @throws IOException if the channel failed
+     *
+     * @see #importFrom(ReadableByteChannel)
+     */
+    public int exportTo(WritableByteChannel channel) throws IOException
+    {
+        SQLiteDatabase    db      = this.getReadableDatabase();
+        TriDump.Writer    writer  = new TriDump.Writer(channel);
+        ArrayList<String> tables  = new ArrayList<>();
+        String            limit   = String.valueOf(MIGRATION_BATCH_SIZE);
+        int               count   = 0;
+
+        tables.add(TABLE_NAME);
+
+        if(_partitions != null)
+            tables.addAll(_partitions.all(db).values());
+
+        for (String table : tables) {
+            String lastId = null;
+
+            while(true) {
+                String    selection = (lastId == null) ? null : Columns.KEY_ID.key() + " > ?";
+                String[]  args      = (lastId == null) ? null : new String[] { lastId };
+                Cursor    cursor    = db.query(table, DATA_PROJECTION, selection, args, null, null, Columns.KEY_ID.key() + " ASC", limit);
+
+                try {
+                    if(!cursor.moveToFirst())
+                        break;
+
+                    do {
+                        lastId = cursor.getString(1);
+
+                        writer.write(lastId, cursor.getString(2), cursor.getLong(3), portable(cursor.getBlob(0)));
+                        count++;
+                    } while (cursor.moveToNext());
+                } finally {
+                    cursor.close();
+                }
+            }
+        }
+
+        writer.finish();
+
+        return count;
+    }
+
+    /**
+     * stream rows that were exported with {@link #exportTo(WritableByteChannel)} into the table, replacing rows with
+     * the same identifier. the rows are written as is, in transactions of {@link #IMPORT_BATCH_SIZE} rows, and are only
+     * de-serialized when the table has indexed fields. if the channel fails, the batches that were already written are kept.
+     *
+     * @param channel the channel, it is not closed
+     *
+     * @return the number of rows imported
+     *
+     * @throws IOException if the channel failed, or does not hold an exported table
+     */
+    public int importFrom(ReadableByteChannel channel) throws IOException
+    {
+        SQLiteDatabase  db      = this.getWritableDatabase();
+        TriDump.Reader  reader  = new TriDump.Reader(channel);
+        boolean         more    = true;
+        int             count   = 0;
+
+        while(more) {
+            db.beginTransaction();
+
+            try {
+                for (int ix = 0; ix < IMPORT_BATCH_SIZE && (more = reader.next()); ix++) {
+                    ContentValues values = toValues(reader.id, reader.type, reader.timeCreated, reader.data);
+
+                    try {
+                        if(_partitions != null)
+                            insertPartitioned(db, values, SQLiteDatabase.CONFLICT_REPLACE);
+                        else
+                            insertRow(db, values, SQLiteDatabase.CONFLICT_REPLACE);
+                    } finally {
+                        release(values);
+                    }
+
+                    onIdAdded(reader.id);
+                    count++;
+                }
+
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+
+        scheduleBlobSweep();
+
+        return count;
+    }
+
+    /**
+     * query the existence of data by identifier, without loading it. uses an index only query, and if the table
+     * has a Bloom filter, definite misses are answered without touching the database.
+     *
+     * @param id the identifier
+     *
+     * @return {@code true/false} if the data exists
+     *
+     * @see TriDatabase.Builder#bloomFilter(Class, int)
+     */
+    public boolean exists(String id)
+    {
+        // opening builds the Bloom filter
+        SQLiteDatabase  db    = this.getReadableDatabase();
+        BloomFilter     bloom = _bloom;
+
+        if(bloom != null && !bloom.mightContain(id))
+            return false;
+
+        Cursor cursor = db.rawQuery("SELECT 1 FROM " + idTable() + " WHERE " + Columns.KEY_ID.key() + " = ? LIMIT 1", new String[] { id });
+
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * set the expected amount of identifiers of the Bloom filter of {@link #exists(String)}, before the table was opened
+     *
+     * @param capacity the expected amount of identifiers, {@code 0} for no Bloom filter
+     */
+    void setBloomFilter(int capacity)
+    {
+        _bloomCapacity = capacity;
+    }
+
+    /**
+     * build the Bloom filter from the identifiers of the table with an index only scan. identifiers that are
+     * added during the build are added to it as well.
+     * the database is never read while holding the lock, a writer in a transaction holds the connection
+     * and waits on the lock to add it's identifier.
+     *
+     * @param db the database
+     */
+    private void rebuildBloomFilter(SQLiteDatabase db)
+    {
+        BloomFilter bloom;
+
+        synchronized (_bloomAdds) {
+            if(_bloomRebuild != null || _bloomPending != null)
+                return;
+
+            _bloomPending = new ArrayList<>();
+        }
+
+        try {
+            int count = (int) DatabaseUtils.queryNumEntries(db, idTable());
+
+            synchronized (_bloomAdds) {
+                _bloomRebuild = bloom = new BloomFilter(Math.max(_bloomCapacity, count * 2), 0.01);
+
+                for (String id : _bloomPending)
+                    bloom.add(id);
+
+                _bloomPending = null;
+                _bloomAdds.set(0);
+                _bloomDeletes.set(0);
+            }
+
+            Cursor cursor = db.query(idTable(), new String[] { Columns.KEY_ID.key() }, null, null, null, null, null);
+
+            try {
+                while(cursor.moveToNext())
+                    bloom.add(cursor.getString(0));
+            } finally {
+                cursor.close();
+            }
+
+            synchronized (_bloomAdds) {
+                _bloom = bloom;
+            }
+        } finally {
+            synchronized (_bloomAdds) {
+                _bloomRebuild = null;
+                _bloomPending = null;
+            }
+        }
+    }
+
+    /**
+     * keep the Bloom filter up to date with an added identifier, a filter that is over capacity is rebuilt
+     * on the background thread. called after the identifier was written.
+     *
+     * @param id the identifier
+     */
+    private void onIdAdded(String id)
+    {
+        onWrite();
+
+        if(_bloom == null)
+            return;
+
+        synchronized (_bloomAdds) {
+            _bloom.add(id);
+
+            if(_bloomRebuild != null)
+                _bloomRebuild.add(id);
+            else if(_bloomPending != null)
+                _bloomPending.add(id);
+        }
+
+        if(_bloomAdds.incrementAndGet() > _bloom.capacity())
+            scheduleBloomFilterRebuild();
+    }
+
+    /**
+     * keep track of deleted identifiers, a Bloom filter can not forget them, so once too many were deleted
+     * it is rebuilt on the background thread to keep it's false positives low.
+     *
+     * @param count the amount of deleted rows
+     *
+     * @return the amount of deleted rows
+     */
+    private int onDeleted(int count)
+    {
+        if(count > 0) {
+            onWrite();
+            scheduleBlobSweep();
+        }
+
+        if(_bloom != null && count > 0 && _bloomDeletes.addAndGet(count) > _bloom.capacity() / 2)
+            scheduleBloomFilterRebuild();
+
+        return count;
+    }
+
+    /**
+     * keep track of updated rows
+     *
+     * @param count the amount of updated rows
+     *
+     * @return the amount of updated rows
+     */
+    private int onUpdated(int count)
+    {
+        if(count > 0)
+            onWrite();
+
+        return count;
+    }
+
+    /**
+     * invalidate the cached query results after a write. the results that were read inside of a transaction
+     * that is rolled back are invalidated again.
+     */
+    private void onWrite()
+    {
+        final TriQueryCache<T> cache = _queryCache;
+
+        if(cache == null)
+            return;
+
+        cache.invalidate();
+
+        onRollback(new Runnable() {
+            @Override
+            public void run() {
+                cache.invalidate();
+            }
+        });
+    }
+
+    /**
+     * set the maximal size of the cache of the query results, before the table was opened
+     *
+     * @param maxBytes the maximal estimated size in bytes, {@code 0} for no cache
+     */
+    void setQueryCache(int maxBytes)
+    {
+        _queryCache = (maxBytes > 0) ? new TriQueryCache<T>(maxBytes) : null;
+    }
+
+    /**
+     * get the cache of the query results and it's metrics
+     *
+     * @return the {@link TriQueryCache}, or {@code null} if the table has none
+     *
+     * @see TriDatabase.Builder#queryCache(Class, int)
+     */
+    public TriQueryCache<T> queryCache()
+    {
+        return _queryCache;
+    }
+
+    /**
+     * prefetch the result of a query of the table on the low priority background thread, so the first screens
+     * after a cold start do not pay for reading and de-serializing it. with a {@link TriQueryCache} the objects are
+     * cached, otherwise only the pages of their rows are read.
+     *
+     * @param query the query
+     *
+     * @return a {@link Future} of {@code true} if the whole result was prefetched, cancel it to stop the prefetch
+     *
+     * @see TriQuery#prefetch()
+     */
+    public Future<Boolean> prefetch(TriQuery<T> query)
+    {
+        return query.prefetch();
+    }
+
+    /**
+     * serialize the data of the table against a dictionary of class descriptors, that is kept once per table, so every
+     * row only holds a small reference instead of every class descriptor. rows of the standard form are still read,
+     * and are re-encoded when they are saved again.
+     *
+     * @param compact {@code true} to write compact rows
+     *
+     * @see TriDatabase.Builder#compactSerialization(Class)
+     */
+    void setCompactSerialization(boolean compact)
+    {
+        _compact = compact;
+    }
+
+    /**
+     * @return {@code true} if the data of the table is written in the compact form
+     *
+     * @see TriDatabase.Builder#compactSerialization(Class)
+     */
+    public boolean compactSerialization()
+    {
+        return _compact;
+    }
+
+    /**
+     * skip the writes of data whose serialized form and metadata are identical to it's row, so saving an unchanged
+     * object costs a serialization and an indexed read, rather than a write and a sync. the hash of the serialized
+     * data is kept in a column of the table, rows that were written before have no hash, and are written once.
+     *
+     * @param dirtyChecking {@code true} to skip redundant writes
+     *
+     * @see TriDatabase.Builder#dirtyChecking(Class)
+     */
+    void setDirtyChecking(boolean dirtyChecking)
+    {
+        _dirtyChecking  = dirtyChecking;
+        _hashed         = _hashed || dirtyChecking;
+    }
+
+    /**
+     * @return {@code true} if writes of unchanged data are skipped
+     *
+     * @see TriDatabase.Builder#dirtyChecking(Class)
+     */
+    public boolean dirtyChecking()
+    {
+        return _dirtyChecking;
+    }
+
+    /**
+     * @return the amount of writes that were dirty checked
+     */
+    public long checkedWrites()
+    {
+        return _checkedWrites.get();
+    }
+
+    /**
+     * @return the amount of writes that were skipped, because the data did not change
+     */
+    public long skippedWrites()
+    {
+        return _skippedWrites.get();
+    }
+
+    /**
+     * keep the blobs of the table that are above a size in files beside the database, with only a reference in the
+     * {@code data} column of their rows, so they do not overflow the pages of the database, or the cursor windows of
+     * queries. the files are read back through memory mappings, and are deleted shortly after their rows are.
+     *
+     * @param threshold the size in bytes above which blobs are kept in files, {@code 0} to keep all of them in the rows
+     *
+     * @see TriDatabase.Builder#externalBlobs(Class, int)
+     */
+    void setExternalBlobs(int threshold)
+    {
+        _blobThreshold = threshold;
+    }
+
+    /**
+     * @return the size in bytes above which blobs are kept in files, {@code 0} if all of them are kept in the rows
+     *
+     * @see TriDatabase.Builder#externalBlobs(Class, int)
+     */
+    public int externalBlobThreshold()
+    {
+        return (DATABASE_NAME == null) ? 0 : _blobThreshold;
+    }
+
+    /**
+     * delete the files of the rows that are gone, on the background thread, shortly after the write,
+     * so a burst of writes is swept once
+     */
+    private void scheduleBlobSweep()
+    {
+        if(_blobs == null || !_blobs.hasFiles() || !_blobSweepScheduled.compareAndSet(false, true))
+            return;
+
+        SExecutors.background().schedule(new Runnable() {
+            @Override
+            public void run() {
+                _blobSweepScheduled.set(false);
+
+                sweepBlobs();
+            }
+        }, BLOB_SWEEP_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * delete the files that no row refers to. when the table was opened every reference of the table is read, and
+     * after that only the candidates that were collected by the writes are checked, by the identifiers of their rows.
+     * the references are read, and the files are deleted, in a single transaction, so no other write is in progress,
+     * and every write that inserted a reference before it was either committed or rolled back.
+     *
+     * @return the amount of deleted files
+     */
+    int sweepBlobs()
+    {
+        if(!_blobScan.getAndSet(false))
+            return sweepCandidates();
+
+        boolean success = false;
+
+        try {
+            int deleted = sweepAll();
+
+            success = true;
+
+            return deleted;
+        } finally {
+            if(!success)
+                _blobScan.set(true);
+        }
+    }
+
+    /**
+     * delete the files that no row of the table refers to, by reading every reference of the table
+     *
+     * @return the amount of deleted files
+     */
+    private int sweepAll()
+    {
+        SQLiteDatabase    db      = this.getWritableDatabase();
+        HashSet<String>   names   = new HashSet<>();
+        ArrayList<String> tables  = new ArrayList<>();
+
+        db.beginTransaction();
+
+        try {
+            tables.add(TABLE_NAME);
+
+            if(_partitions != null)
+                tables.addAll(_partitions.all(db).values());
+
+            for (String table : tables) {
+                Cursor cursor = db.rawQuery("SELECT " + Columns.KEY_DATA.key() + " FROM " + table + " WHERE length("
+                                            + Columns.KEY_DATA.key() + ") <= " + TriBlobStore.MAX_REFERENCE_LENGTH, null);
+
+                try {
+                    while(cursor.moveToNext()) {
+                        byte[] blob = cursor.getBlob(0);
+
+                        if(TriBlobStore.isReference(blob))
+                            names.add(TriBlobStore.nameOf(blob));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+
+            int deleted = _blobs.sweep(names);
+
+            db.setTransactionSuccessful();
+
+            return deleted;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * delete the candidate files whose rows do not refer to them anymore, in batches of {@link #MIGRATION_BATCH_SIZE},
+     * every batch in it's own transaction. every row is read by it's identifier.
+     *
+     * @return the amount of deleted files
+     */
+    private int sweepCandidates()
+    {
+        SQLiteDatabase  db      = this.getWritableDatabase();
+        String[]        column  = new String[] { Columns.KEY_DATA.key() };
+        int             deleted = 0;
+
+        while(true) {
+            HashMap<String, String> candidates  = null;
+            boolean                 success     = false;
+
+            db.beginTransaction();
+
+            try {
+                candidates = _blobs.takeCandidates(MIGRATION_BATCH_SIZE);
+
+                ArrayList<String> gone = new ArrayList<>();
+
+                for (Map.Entry<String, String> entry : candidates.entrySet()) {
+                    String  id    = entry.getValue();
+                    String  table = (_partitions != null) ? _partitions.routeOf(db, id) : TABLE_NAME;
+                    byte[]  blob  = null;
+
+                    if(table != null) {
+                        Cursor cursor = db.query(table, column, Columns.KEY_ID.key() + " = ?", new String[] { id }, null, null, null);
+
+                        try {
+                            if(cursor.moveToFirst())
+                                blob = cursor.getBlob(0);
+                        } finally {
+                            cursor.close();
+                        }
+                    }
+
+                    if(!TriBlobStore.isReference(blob) || !TriBlobStore.nameOf(blob).equals(entry.getKey()))
+                        gone.add(entry.getKey());
+                }
+
+                deleted += _blobs.delete(gone);
+
+                db.setTransactionSuccessful();
+
+                success = true;
+            } finally {
+                db.endTransaction();
+
+                if(!success && candidates != null)
+                    _blobs.restoreCandidates(candidates);
+            }
+
+            if(candidates.size() < MIGRATION_BATCH_SIZE)
+                return deleted;
+        }
+    }
+
+    private void scheduleBloomFilterRebuild()
+    {
+        if(!_bloomRebuildScheduled.compareAndSet(false, true))
+            return;
+
+        SExecutors.background().execute(new Runnable() {
+            @Override
+            public void run() {
+                _bloomRebuildScheduled.set(false);
+
+                rebuildBloomFilter(getReadableDatabase());
+            }
+        });
+    }
+
+    /**
+     * get the retention policy and it's metrics
+     *
+     * @return the {@link TriRetention}, or {@code null} if the table has none
+     */
+    public TriRetention getRetention()
+    {
+        return _retention;
+    }
+
+    /**
+     * set the retention policy. the periodic purging is scheduled by {@link TriDatabase}.
+     *
+     * @param retention the {@link TriRetention}
+     */
+    void setRetention(TriRetention retention)
+    {
+        _retention = retention;
+    }
+
+    /**
+     * purge the expired data according to the {@link TriRetention} of the table, by the
+     * {@code time_created} column. rows are deleted in batches, with a pause between every batch
+     * so foreground writes are never stalled. a partitioned table drops the partitions that expired
+     * as a whole, and only deletes the rows of the partition at the edge in batches.
+     * this blocks, and is run periodically on the background thread.
+     *
+     * @return the number of rows purged
+     */
+    public int purge()
+    {
+        TriRetention retention = _retention;
+
+        if(retention == null)
+            return 0;
+
+        SQLiteDatabase  db      = this.getWritableDatabase();
+        int             purged  = 0;
+        String          created = Columns.KEY_CREATED.key();
+
+        try {
+            if(retention.maxAge() > 0) {
+                long      threshold = System.currentTimeMillis() - retention.maxAge();
+                String[]  args      = new String[] { String.valueOf(threshold) };
+                String    table     = TABLE_NAME;
+
+                if(_partitions != null) {
+                    for (Map.Entry<Long, String> entry : _partitions.all(db).entrySet()) {
+                        if(_partitions.nextPeriod(entry.getKey()) > threshold)
+                            break;
+
+                        purged += purgePartition(db, entry.getKey(), entry.getValue(), retention);
+                    }
+
+                    table = _partitions.nameOf(db, _partitions.periodOf(threshold));
+                }
+
+                if(table != null)
+                    purged += purgeRows(db, table, created + " < ?", args, false, Long.MAX_VALUE, retention);
+            }
+
+            if(retention.maxRows() > 0) {
+                long excess = DatabaseUtils.queryNumEntries(db, idTable()) - retention.maxRows();
+
+                if(_partitions == null)
+                    purged += purgeRows(db, TABLE_NAME, null, null, true, excess, retention);
+                else {
+                    for (Map.Entry<Long, String> entry : _partitions.all(db).entrySet()) {
+                        if(excess <= 0)
+                            break;
+
+                        // partitions hold disjoint periods, so the oldest rows are in the oldest partitions
+                        if(DatabaseUtils.queryNumEntries(db, entry.getValue()) > excess) {
+                            purged += purgeRows(db, entry.getValue(), null, null, true, excess, retention);
+                            break;
+                        }
+
+                        int count = purgePartition(db, entry.getKey(), entry.getValue(), retention);
+
+                        purged += count;
+                        excess -= count;
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            retention.onError();
+
+            throw e;
+        } finally {
+            retention.onRun();
+        }
+
+        return purged;
+    }
+
+    /**
+     * purge rows of a physical table in batches
+     *
+     * @param db          the database
+     * @param table       the physical table name
+     * @param where       the selection of the expired rows, {@code null} for all of the rows
+     * @param args        the arguments of the selection, may be {@code null}
+     * @param oldestFirst purge the oldest rows by {@code time_created} first
+     * @param max         the maximal amount of rows to purge
+     * @param retention   the retention
+     *
+     * @return the number of rows purged
+     */
+    private int purgeRows(SQLiteDatabase db, String table, String where, String[] args, boolean oldestFirst, long max, TriRetention retention)
+    {
+        String  id      = Columns.KEY_ID.key();
+        int     purged  = 0;
+
+        while(max > 0) {
+            long    start     = System.nanoTime();
+            long    limit     = Math.min(max, retention.batchSize());
+            String  selection = id + " IN (SELECT " + id + " FROM " + table + (where == null ? "" : " WHERE " + where)
+                                + (oldestFirst ? " ORDER BY " + Columns.KEY_CREATED.key() + " ASC" : "") + " LIMIT " + limit + ")";
+
+            int     count;
+
+            if(_partitions == null)
+                count = deleteRows(db, table, selection, args);
+            else {
+                db.beginTransaction();
+
+                try {
+                    // the routes go first, while the selection still finds the rows
+                    db.delete(_partitions.routeName(), selection, args);
+                    count = deleteRows(db, table, selection, args);
+
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+
+            count   = onDeleted(count);
+            purged += count;
+            max    -= count;
+
+            retention.onBatch(count, System.nanoTime() - start);
+
+            if(count < limit || !pause(retention))
+                break;
+        }
+
+        return purged;
+    }
+
+    /**
+     * purge a whole partition. it's routes are deleted in batches first, and the partition is dropped with a
+     * single statement, instead of deleting it's rows.
+     *
+     * @param db        the database
+     * @param period    the start of the period
+     * @param name      the name of the partition
+     * @param retention the retention
+     *
+     * @return the number of rows purged
+     */
+    private int purgePartition(SQLiteDatabase db, long period, String name, TriRetention retention)
+    {
+        String    id        = Columns.KEY_ID.key();
+        String    selection = id + " IN (SELECT " + id + " FROM " + _partitions.routeName() + " WHERE " + TriPartitions.KEY_PERIOD
+                              + " = ? LIMIT " + retention.batchSize() + ")";
+        String[]  args      = new String[] { String.valueOf(period) };
+
+        while(db.delete(_partitions.routeName(), selection, args) == retention.batchSize() && pause(retention));
+
+        long  start = System.nanoTime();
+        int   count = onDeleted(dropPartition(db, period, name));
+
+        retention.onBatch(count, System.nanoTime() - start);
+
+        return count;
+    }
+
+    /**
+     * pause between purge batches
+     *
+     * @return {@code false} if the thread was interrupted
+     */
+    private boolean pause(TriRetention retention)
+    {
+        try {
+            Thread.sleep(retention.pause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return false;
+        }
 
-        db.delete(TABLE_NAME, null, null);
-        db.close();
+        return true;
     }
 
     /**
@@ -364,7 +3156,7 @@ public class TriTable<T extends TriData> extends SQLiteOpenHelper
      */
     public int getDataCount()
     {
-        String 					countQuery 	= "SELECT * FROM " + TABLE_NAME;
+        String 					countQuery 	= "SELECT * FROM " + idTable();
         SQLiteDatabase 	db 					= this.getReadableDatabase();
         Cursor 					cursor 			= db.rawQuery(countQuery, null);
 
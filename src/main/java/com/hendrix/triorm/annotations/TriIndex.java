@@ -0,0 +1,25 @@
+package com.hendrix.triorm.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * marks a field of a {@link com.hendrix.triorm.TriData} as indexed. the table keeps the value of the field
+ * in an extra indexed column that is filled on save, so queries can filter and order by it with
+ * {@link com.hendrix.triorm.query.TriQuery.Builder#where(String, Object)} without de-serializing the table.
+ * <p/>
+ * primitives, their boxes, {@link String} and enums are supported, other types are indexed by their {@code toString()}.
+ *
+ * @author Tomer Shalev
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface TriIndex {
+    /**
+     *
+     * @return the column name, defaults to the name of the field
+     */
+    public String name() default "";
+}
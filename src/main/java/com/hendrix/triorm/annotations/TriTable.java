@@ -24,4 +24,28 @@ public @interface TriTable {
      * @return the table name inside the database
      */
     public String tableName();
+
+    /**
+     *
+     * @return maximal age of the data by it's {@code time_created} in milliseconds, {@code 0} to keep forever
+     */
+    public long maxAge() default 0L;
+
+    /**
+     *
+     * @return maximal amount of rows, the oldest by {@code time_created} are purged first, {@code 0} for no limit
+     */
+    public int maxRows() default 0;
+
+    /**
+     *
+     * @return the physical layout of the table
+     */
+    public com.hendrix.triorm.TriTable.Layout layout() default com.hendrix.triorm.TriTable.Layout.ROWID;
+
+    /**
+     *
+     * @return the time partitioning of the table by it's {@code time_created}
+     */
+    public com.hendrix.triorm.TriTable.Partition partition() default com.hendrix.triorm.TriTable.Partition.NONE;
 }
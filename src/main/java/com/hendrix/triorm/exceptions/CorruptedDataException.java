@@ -0,0 +1,20 @@
+package com.hendrix.triorm.exceptions;
+
+/**
+ * Exception that is raised when stored data could not be de-serialized, for example a damaged blob,
+ * or a compact blob whose class descriptors are missing from the dictionary.
+ *
+ * @author Tomer Shalev
+ */
+public class CorruptedDataException extends RuntimeException {
+    private static final long serialVersionUID = 0L;
+
+    public CorruptedDataException(String message) {
+        super("TriOrm - corrupted data. " + message);
+    }
+
+    public CorruptedDataException(String message, Throwable cause) {
+        super("TriOrm - corrupted data. " + message, cause);
+    }
+
+}
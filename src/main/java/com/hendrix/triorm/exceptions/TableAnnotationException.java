@@ -12,4 +12,8 @@ public class TableAnnotationException extends RuntimeException {
         super("TriOrm - table annotation problem. make sure the class is annotated, and only once.");
     }
 
+    public TableAnnotationException(String message) {
+        super("TriOrm - table annotation problem. " + message);
+    }
+
 }
@@ -0,0 +1,39 @@
+package com.hendrix.triorm.interfaces;
+
+import java.io.IOException;
+import java.io.ObjectStreamClass;
+
+/**
+ * a dictionary of class descriptors, so a serialized object holds a small reference to every class descriptor
+ * instead of the whole descriptor.
+ *
+ * @see com.hendrix.triorm.utils.SSerialize#serializeToByteArray(java.io.Serializable, IClassDictionary)
+ *
+ * @author Tomer Shalev
+ */
+@SuppressWarnings("UnusedDeclaration")
+public interface IClassDictionary {
+    /**
+     * get the reference of a class descriptor, and record it if it is new.
+     * the same class with a different layout of fields gets a different reference.
+     *
+     * @param descriptor the class descriptor that is being written
+     *
+     * @return the reference
+     *
+     * @throws IOException if the descriptor could not be recorded
+     */
+    int idOf(ObjectStreamClass descriptor) throws IOException;
+
+    /**
+     * get the class descriptor of a reference, as it was recorded
+     *
+     * @param id the reference
+     *
+     * @return the class descriptor
+     *
+     * @throws IOException              if the reference is unknown
+     * @throws ClassNotFoundException   if the class does not exist anymore
+     */
+    ObjectStreamClass descriptorOf(int id) throws IOException, ClassNotFoundException;
+}
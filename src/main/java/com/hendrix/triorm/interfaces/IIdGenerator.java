@@ -0,0 +1,20 @@
+package com.hendrix.triorm.interfaces;
+
+/**
+ * generator of identifiers for {@link com.hendrix.triorm.TriData} objects that were created without one.
+ * implementations must be thread safe, and should generate unique identifiers that sort lexically by creation
+ * order, so identifier range queries and primary key locality stay efficient.
+ *
+ * @see com.hendrix.triorm.TriOrm#setIdGenerator(IIdGenerator)
+ *
+ * @author Tomer Shalev
+ */
+@SuppressWarnings("UnusedDeclaration")
+public interface IIdGenerator {
+    /**
+     * generate the next identifier
+     *
+     * @return a new unique identifier
+     */
+    String nextId();
+}
@@ -0,0 +1,27 @@
+package com.hendrix.triorm.interfaces;
+
+import com.hendrix.triorm.TriData;
+
+/**
+ * a user supplied transform of a single {@link com.hendrix.triorm.TriData} object, that is applied on
+ * every row of a table when the database version was bumped.
+ *
+ * @param <T> the data type of the table
+ *
+ * @see com.hendrix.triorm.TriDatabase.Builder#addTable(Class, IMigration)
+ *
+ * @author Tomer Shalev
+ */
+@SuppressWarnings("UnusedDeclaration")
+public interface IMigration<T extends TriData> {
+    /**
+     * migrate a single data object. the identifier of the data must not be changed.
+     *
+     * @param data          the data as it was read from the database
+     * @param oldVersion    the version the data was written with
+     * @param newVersion    the current version of the database
+     *
+     * @return the migrated data that will be re-encoded into the row, or {@code null} to delete the row
+     */
+    T migrate(T data, int oldVersion, int newVersion);
+}
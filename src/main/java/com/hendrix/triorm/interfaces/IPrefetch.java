@@ -0,0 +1,24 @@
+package com.hendrix.triorm.interfaces;
+
+import com.hendrix.triorm.TriData;
+import com.hendrix.triorm.query.TriQuery;
+
+/**
+ * a user supplied description of a hot query of a table, that is prefetched on the background thread
+ * once the database is built, so the first screens after a cold start find it's result in memory.
+ *
+ * @param <T> the data type of the table
+ *
+ * @see com.hendrix.triorm.TriDatabase.Builder#prefetch(Class, IPrefetch)
+ *
+ * @author Tomer Shalev
+ */
+@SuppressWarnings("UnusedDeclaration")
+public interface IPrefetch<T extends TriData> {
+    /**
+     * describe the query, exactly like the screen that needs it does, so it's cached result is found
+     *
+     * @param builder a new query builder of the table
+     */
+    void query(TriQuery.Builder<T> builder);
+}
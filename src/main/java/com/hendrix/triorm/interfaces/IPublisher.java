@@ -0,0 +1,22 @@
+package com.hendrix.triorm.interfaces;
+
+/**
+ * a publisher of a stream of items, that emits them as they are requested by it's subscribers.
+ * it follows the contract of {@code java.util.concurrent.Flow.Publisher} and of {@code Reactive Streams},
+ * that are not available on every Android version, so adapting it to a reactive library takes a few lines.
+ *
+ * @param <T> the item type
+ *
+ * @see com.hendrix.triorm.query.TriQuery#publish()
+ *
+ * @author Tomer Shalev
+ */
+@SuppressWarnings("UnusedDeclaration")
+public interface IPublisher<T> {
+    /**
+     * subscribe to the stream, every subscriber receives a stream of it's own
+     *
+     * @param subscriber the subscriber, it receives {@link ISubscriber#onSubscribe(ISubscription)} first
+     */
+    void subscribe(ISubscriber<? super T> subscriber);
+}
@@ -0,0 +1,18 @@
+package com.hendrix.triorm.interfaces;
+
+import com.hendrix.triorm.TriSnapshot;
+
+/**
+ * a listener of the progress of {@link com.hendrix.triorm.TriDatabase#snapshot(java.io.File, ISnapshotListener)}
+ *
+ * @author Tomer Shalev
+ */
+@SuppressWarnings("UnusedDeclaration")
+public interface ISnapshotListener {
+    /**
+     * called on the thread of the snapshot after every step
+     *
+     * @param snapshot the snapshot so far, with it's progress and throughput
+     */
+    void onProgress(TriSnapshot snapshot);
+}
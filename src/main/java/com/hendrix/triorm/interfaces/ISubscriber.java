@@ -0,0 +1,38 @@
+package com.hendrix.triorm.interfaces;
+
+/**
+ * a subscriber of an {@link IPublisher}. the calls are serial, and {@link #onNext(Object)} is only called
+ * as many times as was requested through the {@link ISubscription}.
+ *
+ * @param <T> the item type
+ *
+ * @author Tomer Shalev
+ */
+@SuppressWarnings("UnusedDeclaration")
+public interface ISubscriber<T> {
+    /**
+     * called once, before any other call
+     *
+     * @param subscription the subscription, to request items or cancel
+     */
+    void onSubscribe(ISubscription subscription);
+
+    /**
+     * called for every requested item
+     *
+     * @param item the item, never {@code null}
+     */
+    void onNext(T item);
+
+    /**
+     * called once if the stream failed, no other call follows
+     *
+     * @param throwable the failure
+     */
+    void onError(Throwable throwable);
+
+    /**
+     * called once when the stream ended, no other call follows
+     */
+    void onComplete();
+}
@@ -0,0 +1,21 @@
+package com.hendrix.triorm.interfaces;
+
+/**
+ * the subscription of an {@link ISubscriber} to an {@link IPublisher}
+ *
+ * @author Tomer Shalev
+ */
+@SuppressWarnings("UnusedDeclaration")
+public interface ISubscription {
+    /**
+     * request more items, the demand adds up
+     *
+     * @param n the amount of items, positive, {@code Long.MAX_VALUE} for all of them
+     */
+    void request(long n);
+
+    /**
+     * stop the stream and release it's resources, items may still arrive for a short while
+     */
+    void cancel();
+}
@@ -0,0 +1,245 @@
+package com.hendrix.triorm.query;
+
+import com.hendrix.triorm.TriData;
+import com.hendrix.triorm.TriTable;
+import com.hendrix.triorm.TriTable.Columns;
+import com.hendrix.triorm.query.TriQuery.ORDER;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * a query of the merged timeline of several tables, ordered by {@code time_created}. every table is read in keyset
+ * windows on it's {@code time_created} index, and the heads of the tables are merged, so the merge stops as soon as
+ * the limit is reached, a table is only read as far as the merged page needs, and only the returned rows are
+ * de-serialized.
+ * <p/>
+ * rows with the same {@code time_created} are ordered by the order of the tables, and then by identifier.
+ *
+ * @see com.hendrix.triorm.TriOrm#queryAcross(Class[])
+ *
+ * @author Tomer Shalev
+ */
+@SuppressWarnings("UnusedDeclaration")
+public class TriMergedQuery {
+
+    /**
+     * the query of every table
+     */
+    private final ArrayList<TriQuery<?>>  _queries;
+    private final int                     _limit;
+    private final boolean                 _desc;
+
+    private TriMergedQuery(Builder builder)
+    {
+        _queries  = new ArrayList<>(builder._tables.size());
+        _limit    = builder._limit;
+        _desc     = builder._order == ORDER.DESC;
+
+        // a table never contributes more rows than the limit, and is read in windows of it's share of it
+        int fetchSize = (builder._fetchSize > 0) ? builder._fetchSize
+                                                 : Math.min(TriQuery.DEFAULT_FETCH_SIZE - 1, _limit / Math.max(1, builder._tables.size())) + 1;
+
+        for (TriTable<?> table : builder._tables) {
+            TriQuery.Builder<TriData> query = new TriQuery.Builder<>(table);
+
+            query.type(builder._type).timeCreatedFrom(builder._from).timeCreatedTo(builder._to)
+                 .ORDER(Columns.KEY_CREATED, builder._order).LIMIT(_limit).fetchSize(fetchSize);
+
+            _queries.add(query.build());
+        }
+    }
+
+    /**
+     * perform the merged query
+     *
+     * @return {@link java.util.ArrayList} of data of all of the tables, in the order of {@code time_created}
+     */
+    public ArrayList<TriData> query()
+    {
+        ArrayList<TriData>    listData  = new ArrayList<>();
+        ArrayList<Head>       heads     = new ArrayList<>(_queries.size());
+        PriorityQueue<Head>   merge     = new PriorityQueue<>(Math.max(1, _queries.size()), new Comparator<Head>() {
+            @Override
+            public int compare(Head lhs, Head rhs) {
+                int order = (lhs.timeCreated < rhs.timeCreated) ? -1 : (lhs.timeCreated == rhs.timeCreated ? 0 : 1);
+
+                if(_desc)
+                    order = -order;
+
+                return (order != 0) ? order : lhs.index - rhs.index;
+            }
+        });
+
+        try {
+            for (int ix = 0; ix < _queries.size(); ix++) {
+                Head head = new Head(ix, _queries.get(ix).windows());
+
+                heads.add(head);
+
+                if(head.moveToNext())
+                    merge.add(head);
+            }
+
+            while(listData.size() < _limit && !merge.isEmpty()) {
+                Head    head = merge.poll();
+                TriData data = head.windows.current();
+
+                if(data != null)
+                    listData.add(data);
+
+                if(head.moveToNext())
+                    merge.add(head);
+            }
+        } finally {
+            for (Head head : heads)
+                head.windows.close();
+        }
+
+        return listData;
+    }
+
+    /**
+     * the current row of a table in the merge
+     */
+    private static final class Head
+    {
+        final int                 index;
+        final TriQuery<?>.Windows windows;
+        long                      timeCreated;
+
+        Head(int index, TriQuery<?>.Windows windows) {
+            this.index    = index;
+            this.windows  = windows;
+        }
+
+        /**
+         * step the table to it's next row
+         *
+         * @return {@code false} if the table has no more rows
+         */
+        boolean moveToNext() {
+            if(!windows.moveToNext())
+                return false;
+
+            timeCreated = windows.timeCreated();
+
+            return true;
+        }
+    }
+
+    /**
+     * the builder of the merged query
+     *
+     * @see com.hendrix.triorm.query.TriMergedQuery
+     *
+     * @author Tomer Shalev
+     */
+    public static class Builder {
+
+        private final ArrayList<TriTable<?>>  _tables;
+
+        private String                        _type       = null;
+        private long                          _from       = -1L;
+        private long                          _to         = -1L;
+        private ORDER                         _order      = ORDER.DESC;
+        private int                           _limit      = Integer.MAX_VALUE;
+        private int                           _fetchSize  = 0;
+
+        /**
+         * @param tables the tables to merge, ties are ordered by their order
+         */
+        public Builder(ArrayList<TriTable<?>> tables) {
+            _tables = new ArrayList<>(tables);
+        }
+
+        /**
+         * build the merged query
+         *
+         * @return a {@link com.hendrix.triorm.query.TriMergedQuery} instance
+         */
+        public TriMergedQuery build() {
+            return new TriMergedQuery(this);
+        }
+
+        /**
+         * set the type of the data of all of the tables
+         *
+         * @param type the type
+         *
+         * @return the Builder
+         */
+        public Builder type(String type) {
+            _type = type;
+
+            return this;
+        }
+
+        /**
+         * set the starting creation time, together with {@link #timeCreatedTo(long)}
+         *
+         * @param from the starting creation time
+         *
+         * @return the Builder
+         */
+        public Builder timeCreatedFrom(long from) {
+            _from = from;
+
+            return this;
+        }
+
+        /**
+         * set the destination creation time, together with {@link #timeCreatedFrom(long)}
+         *
+         * @param to the destination creation time
+         *
+         * @return the Builder
+         */
+        public Builder timeCreatedTo(long to) {
+            _to = to;
+
+            return this;
+        }
+
+        /**
+         * set the order of {@code time_created}, newest first by default
+         *
+         * @param order {@link ORDER#DESC} or {@link ORDER#ASC}
+         *
+         * @return the Builder
+         */
+        public Builder ORDER(ORDER order) {
+            _order = (order == ORDER.ASC) ? ORDER.ASC : ORDER.DESC;
+
+            return this;
+        }
+
+        /**
+         * set the limit of the merged result
+         *
+         * @param limit the limit
+         *
+         * @return the Builder
+         */
+        public Builder LIMIT(int limit) {
+            _limit = limit;
+
+            return this;
+        }
+
+        /**
+         * set the amount of rows of a window of every table, by default the share of every table in the limit
+         *
+         * @param rows the amount of rows of a window
+         *
+         * @return the Builder
+         */
+        public Builder fetchSize(int rows) {
+            _fetchSize = rows;
+
+            return this;
+        }
+    }
+
+}
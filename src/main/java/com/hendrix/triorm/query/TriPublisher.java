@@ -0,0 +1,202 @@
+package com.hendrix.triorm.query;
+
+import com.hendrix.triorm.TriData;
+import com.hendrix.triorm.interfaces.IPublisher;
+import com.hendrix.triorm.interfaces.ISubscriber;
+import com.hendrix.triorm.interfaces.ISubscription;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a publisher of the result of a {@link TriQuery}, that reads and de-serializes the rows only as they are requested.
+ * every subscriber performs the query on it's own, on the first request, and reads it in keyset windows of the
+ * fetch size of the query, so a slow subscriber never forces the whole result into memory.
+ * the cursor of the current window is closed once the stream completes, fails or is cancelled.
+ * <p/>
+ * the rows are emitted on the thread that requested them, or on the executor of the publisher, one thread at a time.
+ * rows that can not be de-serialized are skipped.
+ *
+ * @param <T> the data type
+ *
+ * @see TriQuery#publish()
+ * @see TriQuery#publish(Executor)
+ *
+ * @author Tomer Shalev
+ */
+@SuppressWarnings("UnusedDeclaration")
+public class TriPublisher<T extends TriData> implements IPublisher<T>
+{
+    private final TriQuery<T> _query;
+
+    /**
+     * the executor that emits the rows, {@code null} to emit them on the requesting thread
+     */
+    private final Executor    _executor;
+
+    /**
+     * @param query     the query, it is not changed by the builder anymore
+     * @param executor  the executor that emits the rows, {@code null} to emit them on the requesting thread
+     */
+    TriPublisher(TriQuery<T> query, Executor executor)
+    {
+        _query    = query;
+        _executor = executor;
+    }
+
+    @Override
+    public void subscribe(ISubscriber<? super T> subscriber)
+    {
+        if(subscriber == null)
+            throw new NullPointerException("subscriber = null");
+
+        subscriber.onSubscribe(new Subscription(subscriber));
+    }
+
+    /**
+     * the subscription of a single subscriber. requests and cancellations only add up, the rows are emitted by
+     * a single drain at a time, so a request from within {@link ISubscriber#onNext(Object)} does not recurse.
+     */
+    private final class Subscription implements ISubscription, Runnable
+    {
+        private final ISubscriber<? super T>  _subscriber;
+
+        private final AtomicLong              _requested  = new AtomicLong();
+        /**
+         * the amount of pending drains, only the first one runs, and repeats for the rest
+         */
+        private final AtomicInteger           _wip        = new AtomicInteger();
+
+        private volatile boolean              _cancelled  = false;
+        private volatile Throwable            _invalid    = null;
+
+        /**
+         * the state of the drain
+         */
+        private boolean                       _done       = false;
+        private TriQuery<T>.Windows           _windows    = null;
+
+        Subscription(ISubscriber<? super T> subscriber)
+        {
+            _subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n)
+        {
+            if(n <= 0)
+                _invalid = new IllegalArgumentException("TriOrm - non positive request " + n);
+            else {
+                long requested, next;
+
+                do {
+                    requested = _requested.get();
+                    next      = requested + n;
+                } while (!_requested.compareAndSet(requested, (next < 0) ? Long.MAX_VALUE : next));
+            }
+
+            drain();
+        }
+
+        @Override
+        public void cancel()
+        {
+            _cancelled = true;
+
+            drain();
+        }
+
+        private void drain()
+        {
+            if(_wip.getAndIncrement() != 0)
+                return;
+
+            if(_executor != null)
+                _executor.execute(this);
+            else
+                run();
+        }
+
+        @Override
+        public void run()
+        {
+            int missed = 1;
+
+            do {
+                emit();
+
+                missed = _wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit()
+        {
+            if(_done)
+                return;
+
+            if(_cancelled) {
+                finish();
+                return;
+            }
+
+            if(_invalid != null) {
+                finish();
+                _subscriber.onError(_invalid);
+                return;
+            }
+
+            while(_requested.get() > 0 && !_cancelled) {
+                T data;
+
+                try {
+                    if(_windows == null)
+                        _windows = _query.windows();
+
+                    if(!_windows.moveToNext()) {
+                        finish();
+                        _subscriber.onComplete();
+                        return;
+                    }
+
+                    data = _windows.current();
+                } catch (RuntimeException e) {
+                    finish();
+                    _subscriber.onError(e);
+                    return;
+                }
+
+                if(data == null)
+                    continue;
+
+                if(_requested.get() != Long.MAX_VALUE)
+                    _requested.decrementAndGet();
+
+                try {
+                    _subscriber.onNext(data);
+                } catch (RuntimeException e) {
+                    // a subscriber that throws is cancelled
+                    finish();
+                    throw e;
+                }
+            }
+
+            if(_cancelled)
+                finish();
+        }
+
+        /**
+         * end the stream and close the cursor
+         */
+        private void finish()
+        {
+            _done = true;
+
+            if(_windows != null)
+                _windows.close();
+
+            _windows = null;
+        }
+    }
+
+}
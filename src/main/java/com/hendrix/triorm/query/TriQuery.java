@@ -1,24 +1,41 @@
 package com.hendrix.triorm.query;
 
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 
 import com.hendrix.triorm.TriData;
+import com.hendrix.triorm.TriRow;
 import com.hendrix.triorm.TriTable;
 import com.hendrix.triorm.TriTable.Columns;
-import com.hendrix.triorm.utils.SSerialize;
+import com.hendrix.triorm.utils.SExecutors;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
 /**
- * a {@code SQL} query builder according to the identifier, type, time_created fields of {@link com.hendrix.triorm.TriTable.Columns}
+ * a {@code SQL} query builder according to the identifier, type, time_created fields of {@link com.hendrix.triorm.TriTable.Columns},
+ * and the fields annotated with {@link com.hendrix.triorm.annotations.TriIndex}.
+ * <p/>
+ * iterating the query reads it in keyset windows of {@link Builder#fetchSize(int)} rows, so only one window is
+ * in memory at a time, no matter how many rows match.
  *
  * @param <T> the data type
  *
  * @author Tomer Shalev
  */
 @SuppressWarnings("UnusedDeclaration")
-public class TriQuery<T extends TriData> {
+public class TriQuery<T extends TriData> implements Iterable<T> {
+
+    /**
+     * the amount of rows of a window when iterating a query without a fetch size
+     */
+    public static final int     DEFAULT_FETCH_SIZE  = 256;
 
     private String              _rawQueryString = null;
     private TriTable            _ssd            = null;
@@ -29,11 +46,20 @@ public class TriQuery<T extends TriData> {
     /**
      * order by column
      */
-    private Columns              _by            = null;
+    private String              _by            = null;
     /**
      * order of results
      */
     private ORDER               _order          = ORDER.NONE;
+    /**
+     * the window of time_created, {@code -1} for unbounded. a partitioned table only reads the overlapping partitions
+     */
+    private long                _createdFrom    = -1L;
+    private long                _createdTo      = -1L;
+    /**
+     * the amount of rows read in a single window, {@code 0} to read all of them with one query
+     */
+    private int                 _fetchSize      = 0;
 
     /**
      * enum for describing order {@code {DESC, ASC, NONE}}
@@ -44,6 +70,22 @@ public class TriQuery<T extends TriData> {
         update(builder);
     }
 
+    /**
+     * a copy of a query, that is not changed when a recycled builder is built again
+     *
+     * @param query the query
+     */
+    private TriQuery(TriQuery<T> query) {
+        _rawQueryString = query._rawQueryString;
+        _ssd            = query._ssd;
+        _limit          = query._limit;
+        _by             = query._by;
+        _order          = query._order;
+        _createdFrom    = query._createdFrom;
+        _createdTo      = query._createdTo;
+        _fetchSize      = query._fetchSize;
+    }
+
     /**
      * update a recycled builder
      *
@@ -55,10 +97,24 @@ public class TriQuery<T extends TriData> {
         _limit          = builder._limit;
         _by             = builder._by;
         _order          = builder._order;
+
+        boolean window  = builder._time_created_from>=0 && builder._time_created_to>=0;
+
+        _createdFrom    = window ? builder._time_created_from : -1L;
+        _createdTo      = window ? builder._time_created_to : -1L;
+
+        _fetchSize      = builder._fetchSize;
     }
 
     /**
-     * perform the query
+     * the projection of a cached query, the size of the serialized data estimates the size of the cached result
+     */
+    private static final String[] CACHE_PROJECTION = new String[] { Columns.KEY_DATA.key(), Columns.KEY_ID.key(), Columns.KEY_TYPE.key(),
+                                                                    Columns.KEY_CREATED.key(), "length(" + Columns.KEY_DATA.key() + ")" };
+
+    /**
+     * perform the query. when the table has a {@link TriQueryCache}, a query that was already performed since the
+     * table was last written is answered from memory.
      *
      * @return {@link java.util.ArrayList} of data
      */
@@ -67,39 +123,721 @@ public class TriQuery<T extends TriData> {
     {
         SQLiteDatabase db 			= _ssd.getReadableDatabase();
 
-        ArrayList<T> listData   = new ArrayList<>();
-
         String orderBy          = null;
 
         if(_order != ORDER.NONE && _by!=null) {
-            orderBy               = _by.key() + " " + _order.name();
+            orderBy               = _by + " " + _order.name();
         }
 
         String limit            = (_limit==Integer.MAX_VALUE) ? null : String.valueOf(_limit);
+        String source           = _ssd.source(_createdFrom, _createdTo);
+
+        TriQueryCache<T> cache  = _ssd.queryCache();
+        String key              = null;
+        long version            = 0L;
+
+        if(cache != null) {
+            key                   = cacheKey(source, orderBy, limit);
+
+            ArrayList<T> cached   = cache.get(key);
+
+            if(cached != null)
+                return cached;
+
+            // read before querying, so a write that races the query invalidates it's result
+            version               = cache.version();
+        }
+
+        ArrayList<T> listData   = new ArrayList<>();
+        long bytes              = 0L;
+
+        if(_fetchSize > 0) {
+            Windows windows       = new Windows(db, source, _fetchSize, cache != null);
 
-        Cursor cursor 	        = db.query(_ssd.TABLE_NAME(), new String[] {Columns.KEY_DATA.key() }, _rawQueryString, null, null, null, orderBy, limit);
+            while(windows.next(listData));
 
-        int a  = cursor.getCount();
+            if(cache != null)
+                cache.put(key, version, listData, (int) Math.min(windows.bytes, Integer.MAX_VALUE));
 
-        if(cursor==null || (cursor.getCount()==0))
             return listData;
+        }
+
+        Cursor cursor 	        = db.query(source, (cache == null) ? TriTable.DATA_PROJECTION : CACHE_PROJECTION, _rawQueryString, null, null, null, orderBy, limit);
 
-        if (cursor.moveToFirst()) {
-            do {
-               // String data 			  = cursor.getString(0); *****
-                byte[] data 			  =                 cursor.getBlob(0);
+        if(cursor==null)
+            return listData;
 
-                Object dd = SSerialize.deserialize(data);
+        try {
+            if (cursor.moveToFirst()) {
+                do {
+                    listData.add((T) _ssd.decode(cursor));
 
-                listData.add((T) SSerialize.deserialize(data));
-            } while (cursor.moveToNext());
+                    if(cache != null)
+                        bytes += cursor.getLong(4) + TriQueryCache.ENTRY_OVERHEAD;
+                } while (cursor.moveToNext());
+            }
+        } finally {
+            cursor.close();
         }
 
-        //cursor.close();
+        if(cache != null)
+            cache.put(key, version, listData, (int) Math.min(bytes, Integer.MAX_VALUE));
 
         return listData;
     }
 
+    /**
+     * perform the query for raw rows, without de-serializing them, for paths that only pass them on.
+     * the rows are not cached.
+     *
+     * @return {@link java.util.ArrayList} of {@link TriRow}
+     *
+     * @see TriTable#decodeRow(Cursor)
+     */
+    public ArrayList<TriRow> queryRows()
+    {
+        ArrayList<TriRow> listRows = new ArrayList<>();
+
+        if(_fetchSize > 0) {
+            Windows windows       = windows();
+
+            while(windows.nextRows(listRows));
+
+            return listRows;
+        }
+
+        String orderBy          = (_order != ORDER.NONE && _by!=null) ? _by + " " + _order.name() : null;
+        String limit            = (_limit==Integer.MAX_VALUE) ? null : String.valueOf(_limit);
+        Cursor cursor           = _ssd.getReadableDatabase().query(_ssd.source(_createdFrom, _createdTo), TriTable.DATA_PROJECTION,
+                                                                   _rawQueryString, null, null, null, orderBy, limit);
+
+        try {
+            while(cursor.moveToNext()) {
+                TriRow row = _ssd.decodeRow(cursor);
+
+                if(row != null)
+                    listRows.add(row);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return listRows;
+    }
+
+    /**
+     * iterate the raw rows of the query in keyset windows, like {@link #iterator()}, without de-serializing them
+     *
+     * @return the rows
+     */
+    public Iterable<TriRow> rows()
+    {
+        final TriQuery<T> query = new TriQuery<>(this);
+
+        return new Iterable<TriRow>() {
+            @Override
+            public Iterator<TriRow> iterator() {
+                final Windows           windows = query.windows();
+                final ArrayList<TriRow> window  = new ArrayList<>();
+
+                return new Iterator<TriRow>() {
+                    private int _index = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        if(_index < window.size())
+                            return true;
+
+                        window.clear();
+                        _index = 0;
+
+                        return windows.nextRows(window) && hasNext();
+                    }
+
+                    @Override
+                    public TriRow next() {
+                        if(!hasNext())
+                            throw new NoSuchElementException();
+
+                        return window.get(_index++);
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * prefetch the result of the query on the low priority background thread, to warm up the caches before it is
+     * performed. when the table has a {@link TriQueryCache} the result is cached, so the same query is later answered
+     * from memory, otherwise the rows are only read without being de-serialized, so their pages are cached by the
+     * connection and by the file system. the query is copied, so the builder can be reused.
+     * <p/>
+     * cancel the future with {@code mayInterruptIfRunning}, e.g. when the user navigates elsewhere, and the prefetch
+     * stops at the next row.
+     *
+     * @return a {@link Future} of {@code true} if the whole result was prefetched, {@code false} if it was interrupted
+     *
+     * @see com.hendrix.triorm.TriDatabase.Builder#prefetch(Class, com.hendrix.triorm.interfaces.IPrefetch)
+     */
+    public Future<Boolean> prefetch()
+    {
+        final TriQuery<T> query = new TriQuery<>(this);
+
+        return SExecutors.background().submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return query.warm();
+            }
+        });
+    }
+
+    /**
+     * read the result of the query in windows into the cache of the table, or only step it's rows when there is none
+     *
+     * @return {@code false} if the thread was interrupted before all of the rows were read
+     */
+    @SuppressWarnings("unchecked")
+    private boolean warm()
+    {
+        String orderBy          = (_order != ORDER.NONE && _by!=null) ? _by + " " + _order.name() : null;
+        String limit            = (_limit==Integer.MAX_VALUE) ? null : String.valueOf(_limit);
+        String source           = _ssd.source(_createdFrom, _createdTo);
+
+        TriQueryCache<T> cache  = _ssd.queryCache();
+        String key              = (cache == null) ? null : cacheKey(source, orderBy, limit);
+
+        if(cache != null && cache.contains(key))
+            return true;
+
+        long version            = (cache == null) ? 0L : cache.version();
+        ArrayList<T> listData   = new ArrayList<>();
+        Windows windows         = new Windows(_ssd.getReadableDatabase(), source, (_fetchSize > 0) ? _fetchSize : DEFAULT_FETCH_SIZE, cache != null);
+
+        try {
+            while(windows.moveToNext()) {
+                if(Thread.currentThread().isInterrupted())
+                    return false;
+
+                if(cache == null)
+                    continue;
+
+                T data = windows.current();
+
+                if(data != null)
+                    listData.add(data);
+            }
+        } finally {
+            windows.close();
+        }
+
+        if(cache != null)
+            cache.put(key, version, listData, (int) Math.min(windows.bytes, Integer.MAX_VALUE));
+
+        return true;
+    }
+
+    /**
+     * the key of the result of a query in the {@link TriQueryCache}
+     */
+    private String cacheKey(String source, String orderBy, String limit)
+    {
+        return source + "|" + _rawQueryString + "|" + orderBy + "|" + limit;
+    }
+
+    /**
+     * iterate the result of the query in keyset windows of the fetch size, or of {@link #DEFAULT_FETCH_SIZE} rows,
+     * so only a single window is in memory at a time. no cursor is kept open between the windows, so the iterator
+     * does not have to be closed. rows that are written while iterating may or may not be included.
+     * the iterator reads a copy of the query, so a recycled builder may be built again while iterating.
+     *
+     * @return the iterator
+     */
+    @Override
+    public Iterator<T> iterator()
+    {
+        final Windows       windows = new TriQuery<>(this).windows();
+        final ArrayList<T>  window  = new ArrayList<>();
+
+        return new Iterator<T>() {
+            private int _index = 0;
+
+            @Override
+            public boolean hasNext() {
+                if(_index < window.size())
+                    return true;
+
+                window.clear();
+                _index = 0;
+
+                // a window may only hold rows that could not be de-serialized
+                return windows.next(window) && hasNext();
+            }
+
+            @Override
+            public T next() {
+                if(!hasNext())
+                    throw new NoSuchElementException();
+
+                return window.get(_index++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * publish the result of the query to subscribers, that receive the rows as they request them. the rows are read
+     * in keyset windows of the fetch size, or of {@link #DEFAULT_FETCH_SIZE} rows, and are de-serialized one by one on
+     * demand, on the requesting thread. the query is copied, so the builder can be reused.
+     *
+     * @return the {@link TriPublisher}
+     */
+    public TriPublisher<T> publish()
+    {
+        return new TriPublisher<>(new TriQuery<>(this), null);
+    }
+
+    /**
+     * publish the result of the query to subscribers, that receive the rows on an executor as they request them.
+     *
+     * @param executor the executor that reads and emits the rows, one task at a time per subscriber
+     *
+     * @return the {@link TriPublisher}
+     *
+     * @see #publish()
+     */
+    public TriPublisher<T> publish(Executor executor)
+    {
+        return new TriPublisher<>(new TriQuery<>(this), executor);
+    }
+
+    /**
+     * @return a new reader of the rows of the query, in windows of the fetch size, or of {@link #DEFAULT_FETCH_SIZE} rows
+     */
+    Windows windows()
+    {
+        return new Windows(_ssd.getReadableDatabase(), _ssd.source(_createdFrom, _createdTo), (_fetchSize > 0) ? _fetchSize : DEFAULT_FETCH_SIZE, false);
+    }
+
+    /**
+     * delete all of the data selected by the query with a single {@code SQL} statement, without loading it
+     *
+     * @return the number of rows deleted
+     */
+    public int delete()
+    {
+        return _ssd.deleteBySelection(selection());
+    }
+
+    /**
+     * update the type and/or time_created columns of all of the data selected by the query
+     * with a single {@code SQL} statement, without loading it
+     *
+     * @param type          the new type, or {@code null} to leave it as is
+     * @param timeCreated   the new creation time, or {@code -1} to leave it as is
+     *
+     * @return the number of rows updated
+     */
+    public int update(String type, long timeCreated)
+    {
+        return _ssd.updateBySelection(type, timeCreated, selection());
+    }
+
+    /**
+     * count the rows of the query in {@code SQL}, without reading their data
+     *
+     * @return the amount of rows
+     */
+    public long count()
+    {
+        Cursor cursor = aggregate("count(*)", null, null);
+
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0L;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * count the rows of the query by their type in {@code SQL}, without reading their data
+     *
+     * @return the amount of rows by type, a {@code null} key for rows without one, in the order of the types
+     */
+    public LinkedHashMap<String, Long> countByType()
+    {
+        String                      type    = Columns.KEY_TYPE.key();
+        LinkedHashMap<String, Long> counts  = new LinkedHashMap<>();
+        Cursor                      cursor  = aggregate(type + ", count(*)", type, null);
+
+        try {
+            while(cursor.moveToNext())
+                counts.put(cursor.isNull(0) ? null : cursor.getString(0), cursor.getLong(1));
+        } finally {
+            cursor.close();
+        }
+
+        return counts;
+    }
+
+    /**
+     * @return the earliest {@code time_created} of the rows of the query, or {@code -1} if there are none
+     */
+    public long minTimeCreated()
+    {
+        return aggregateTimeCreated("min");
+    }
+
+    /**
+     * @return the latest {@code time_created} of the rows of the query, or {@code -1} if there are none
+     */
+    public long maxTimeCreated()
+    {
+        return aggregateTimeCreated("max");
+    }
+
+    /**
+     * count the rows of the query by buckets of {@code time_created} in {@code SQL}, without reading their data
+     *
+     * @param bucket the size of a bucket in milliseconds, buckets start at multiples of it since the epoch
+     *
+     * @return the amount of rows by the start of their bucket, in the order of time. empty buckets are omitted
+     *
+     * @throws IllegalArgumentException if the size of the bucket is not positive
+     */
+    public LinkedHashMap<Long, Long> histogram(long bucket)
+    {
+        if(bucket <= 0)
+            throw new IllegalArgumentException("TriOrm - the size of a bucket must be positive, " + bucket);
+
+        String                    created = Columns.KEY_CREATED.key();
+        String                    start   = "(" + created + " - (" + created + " % " + bucket + "))";
+        LinkedHashMap<Long, Long> counts  = new LinkedHashMap<>();
+        Cursor                    cursor  = aggregate(start + ", count(*)", start, start);
+
+        try {
+            while(cursor.moveToNext())
+                counts.put(cursor.getLong(0), cursor.getLong(1));
+        } finally {
+            cursor.close();
+        }
+
+        return counts;
+    }
+
+    private long aggregateTimeCreated(String function)
+    {
+        Cursor cursor = aggregate(function + "(" + Columns.KEY_CREATED.key() + ")", null, null);
+
+        try {
+            return (cursor.moveToFirst() && !cursor.isNull(0)) ? cursor.getLong(0) : -1L;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * perform an aggregate over the metadata columns of the rows of the query. the serialized data is never projected,
+     * so the aggregates of {@code time_created} alone can be answered from it's index. a query with a limit is
+     * aggregated over it's limited rows.
+     *
+     * @param columns the aggregated columns
+     * @param groupBy the {@code GROUP BY} clause, may be {@code null}
+     * @param orderBy the {@code ORDER BY} clause of the groups, may be {@code null}
+     *
+     * @return the cursor of the result
+     */
+    private Cursor aggregate(String columns, String groupBy, String orderBy)
+    {
+        String source           = _ssd.metadataSource(_createdFrom, _createdTo);
+        String where            = (_rawQueryString == null) ? "" : " WHERE " + _rawQueryString;
+
+        if(_limit!=Integer.MAX_VALUE) {
+            String limitOrder     = (_order != ORDER.NONE && _by!=null) ? " ORDER BY " + _by + " " + _order.name() : "";
+
+            source                = "(SELECT " + Columns.KEY_TYPE.key() + ", " + Columns.KEY_CREATED.key() + " FROM " + source + where + limitOrder
+                                    + " LIMIT " + _limit + ")";
+            where                 = "";
+        }
+
+        String sql              = "SELECT " + columns + " FROM " + source + where + ((groupBy == null) ? "" : " GROUP BY " + groupBy)
+                                  + ((orderBy == null) ? "" : " ORDER BY " + orderBy);
+
+        return _ssd.getReadableDatabase().rawQuery(sql, null);
+    }
+
+    /**
+     * the {@code WHERE} clause of the rows selected by the query. {@code SQLite} does not support
+     * {@code ORDER BY} and {@code LIMIT} on writes, so these are expressed as a sub query on the identifiers.
+     *
+     * @return the {@code SQL} selection
+     */
+    private String selection()
+    {
+        if(_limit==Integer.MAX_VALUE)
+            return _rawQueryString;
+
+        String orderBy  = (_order != ORDER.NONE && _by!=null) ? " ORDER BY " + _by + " " + _order.name() : "";
+        String where    = (_rawQueryString == null) ? "" : " WHERE " + _rawQueryString;
+
+        return Columns.KEY_ID.key() + " IN (SELECT " + Columns.KEY_ID.key() + " FROM " + _ssd.source(_createdFrom, _createdTo) + where + orderBy + " LIMIT " + _limit + ")";
+    }
+
+    /**
+     * reads the rows of the query in windows of a bounded amount of rows. every window is a separate query that
+     * continues after the last row of the previous one on the ordered column, with the identifier as a tie breaker,
+     * so it is a seek on the index rather than a growing {@code OFFSET}. a query without an order is read by identifier.
+     * rows are stepped one by one, and are only de-serialized by {@link #current()}.
+     */
+    final class Windows
+    {
+        private final SQLiteDatabase  _db;
+        private final String          _source;
+        private final String          _selection;
+        private final String[]        _projection;
+        private final String          _orderBy;
+        private final int             _size;
+        private final boolean         _desc;
+        /**
+         * the index of the ordered column in the projection, {@code -1} when ordered by the identifier only
+         */
+        private final int             _byIndex;
+        private final boolean         _measure;
+
+        /**
+         * the selection of the rows after the last row that was read, {@code null} before the first window
+         */
+        private String                _after      = null;
+        private int                   _remaining  = _limit;
+        private boolean               _done       = false;
+
+        /**
+         * the cursor of the current window, {@code null} between windows
+         */
+        private Cursor                _cursor     = null;
+        private int                   _count      = 0;
+        private int                   _windowSize = 0;
+        /**
+         * is the current row the last one of a full window
+         */
+        private boolean               _last       = false;
+
+        /**
+         * the size of the serialized data that was read, when measured
+         */
+        long                          bytes       = 0L;
+
+        /**
+         * @param db      the database
+         * @param source  the table or the partitions to read from
+         * @param size    the amount of rows of a window
+         * @param measure measure the size of the serialized data, for the {@link TriQueryCache}
+         */
+        Windows(SQLiteDatabase db, String source, int size, boolean measure)
+        {
+            boolean ordered = _order != ORDER.NONE && _by != null && !_by.equals(Columns.KEY_ID.key());
+            String  dir     = (_order == ORDER.DESC) ? " DESC" : " ASC";
+            int     columns = TriTable.DATA_PROJECTION.length + (measure ? 1 : 0);
+
+            _db         = db;
+            _source     = source;
+            _selection  = _rawQueryString;
+            _size       = size;
+            _desc       = _order == ORDER.DESC && _by != null;
+            _measure    = measure;
+            _byIndex    = ordered ? columns : -1;
+            _orderBy    = (ordered ? _by + dir + ", " : "") + Columns.KEY_ID.key() + (_desc ? " DESC" : " ASC");
+            _projection = new String[columns + (ordered ? 1 : 0)];
+
+            System.arraycopy(TriTable.DATA_PROJECTION, 0, _projection, 0, TriTable.DATA_PROJECTION.length);
+
+            if(measure)
+                _projection[TriTable.DATA_PROJECTION.length] = "length(" + Columns.KEY_DATA.key() + ")";
+
+            if(ordered)
+                _projection[_byIndex] = _by;
+        }
+
+        /**
+         * read the rest of the current window, or the next one, and close it's cursor
+         *
+         * @param out the list to add the data of the window to
+         *
+         * @return {@code false} if there were no more rows
+         */
+        boolean next(ArrayList<T> out)
+        {
+            if(!moveToNext())
+                return false;
+
+            try {
+                do {
+                    T data = current();
+
+                    if(data != null)
+                        out.add(data);
+                } while (!_last && moveToNext());
+            } finally {
+                close();
+            }
+
+            return true;
+        }
+
+        /**
+         * step to the next row, the cursor of an exhausted window is closed, and the next window is queried
+         *
+         * @return {@code false} if there are no more rows
+         */
+        boolean moveToNext()
+        {
+            while(true) {
+                if(_cursor == null) {
+                    if(_done || _remaining <= 0)
+                        return false;
+
+                    String selection = _selection;
+
+                    if(_after != null)
+                        selection = (selection == null) ? _after : "(" + selection + ") AND " + _after;
+
+                    _windowSize = Math.min(_size, _remaining);
+                    _count      = 0;
+                    _cursor     = _db.query(_source, _projection, selection, null, null, null, _orderBy, String.valueOf(_windowSize));
+                }
+
+                if(_cursor.moveToNext()) {
+                    _count++;
+                    _remaining--;
+
+                    if(_measure)
+                        bytes += _cursor.getLong(TriTable.DATA_PROJECTION.length) + TriQueryCache.ENTRY_OVERHEAD;
+
+                    _last = (_count == _windowSize);
+
+                    if(_last)
+                        _after = after(_cursor);
+
+                    return true;
+                }
+
+                _done = _count < _windowSize;
+
+                close();
+            }
+        }
+
+        /**
+         * read the rest of the current window, or the next one, as raw rows, and close it's cursor
+         *
+         * @param out the list to add the rows of the window to
+         *
+         * @return {@code false} if there were no more rows
+         */
+        boolean nextRows(ArrayList<TriRow> out)
+        {
+            if(!moveToNext())
+                return false;
+
+            try {
+                do {
+                    TriRow row = _ssd.decodeRow(_cursor);
+
+                    if(row != null)
+                        out.add(row);
+                } while (!_last && moveToNext());
+            } finally {
+                close();
+            }
+
+            return true;
+        }
+
+        /**
+         * @return the {@code time_created} of the current row, without de-serializing it
+         */
+        long timeCreated()
+        {
+            // the column of TriTable#DATA_PROJECTION
+            return _cursor.getLong(3);
+        }
+
+        /**
+         * de-serialize the current row
+         *
+         * @return the data, or {@code null} if it could not be de-serialized
+         */
+        @SuppressWarnings("unchecked")
+        T current()
+        {
+            return (T) _ssd.decode(_cursor);
+        }
+
+        /**
+         * close the cursor of the current window, the next step queries the following window
+         */
+        void close()
+        {
+            if(_cursor != null)
+                _cursor.close();
+
+            _cursor = null;
+        }
+
+        /**
+         * the selection of the rows that follow a row in the order of the query.
+         * {@code SQLite} orders {@code NULL} first, so it is handled apart.
+         *
+         * @param cursor the cursor, at the row
+         *
+         * @return the {@code SQL} selection
+         */
+        private String after(Cursor cursor)
+        {
+            String op = _desc ? " < " : " > ";
+            String id = Columns.KEY_ID.key() + op + literal(cursor, 1);
+
+            if(_byIndex == -1)
+                return "(" + id + ")";
+
+            if(cursor.isNull(_byIndex))
+                return _desc ? "(" + _by + " IS NULL AND " + id + ")" : "((" + _by + " IS NULL AND " + id + ") OR " + _by + " IS NOT NULL)";
+
+            String value  = literal(cursor, _byIndex);
+            String next   = "(" + _by + op + value + " OR (" + _by + " = " + value + " AND " + id + ")";
+
+            return _desc ? next + " OR " + _by + " IS NULL)" : next + ")";
+        }
+
+        /**
+         * a {@code SQL} literal of a column of the current row, of it's storage class
+         */
+        private String literal(Cursor cursor, int index)
+        {
+            switch (cursor.getType(index)) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    return String.valueOf(cursor.getLong(index));
+                case Cursor.FIELD_TYPE_FLOAT:
+                    double value = cursor.getDouble(index);
+
+                    // SQLite reads an overflowing literal as infinity
+                    return Double.isInfinite(value) ? (value > 0 ? "9e999" : "-9e999") : String.valueOf(value);
+                case Cursor.FIELD_TYPE_NULL:
+                    return "NULL";
+                default:
+                    return DatabaseUtils.sqlEscapeString(cursor.getString(index));
+            }
+        }
+    }
+
     /**
      * the builder of the query
      *
@@ -123,10 +861,15 @@ public class TriQuery<T extends TriData> {
         private long                _time_created_from  = -1L;
         private long                _time_created_to    = -1L;
 
+        /**
+         * selections of indexed fields
+         */
+        private ArrayList<String>   _fieldSelections    = new ArrayList<>();
+
         /**
          * order by column
          */
-        private Columns             _by                 = null;
+        private String              _by                 = null;
         /**
          * order of results
          */
@@ -135,6 +878,10 @@ public class TriQuery<T extends TriData> {
          * limit of results
          */
         private int                 _limit              = Integer.MAX_VALUE;
+        /**
+         * amount of rows read in a single window
+         */
+        private int                 _fetchSize          = 0;
 
         /**
          * the table on which to perform the query
@@ -199,6 +946,11 @@ public class TriQuery<T extends TriData> {
                 isFirst           = false;
             }
 
+            for (String field_selection : _fieldSelections) {
+                query             = (!isFirst) ? query + " AND " + field_selection : field_selection;
+                isFirst           = false;
+            }
+
             if(isFirst) {
                 // query=null will force SELECT *.. ->from the android api
                 query             = null;
@@ -232,6 +984,8 @@ public class TriQuery<T extends TriData> {
             _limit          = Integer.MAX_VALUE;
             _time_created_from = -1L;
             _time_created_to = -1L;
+            _fetchSize      = 0;
+            _fieldSelections.clear();
 
             return this;
         }
@@ -314,7 +1068,7 @@ public class TriQuery<T extends TriData> {
         /**
          * set the order for query
          *
-         * @param by    order by which column
+         * @param by    order by which column, {@code null} for no order
          * @param order the order
          *
          * @return the Builder
@@ -323,12 +1077,113 @@ public class TriQuery<T extends TriData> {
          */
         public Builder<E> ORDER(Columns by, ORDER order)
         {
-            _by     = by;
+            _by     = (by == null) ? null : by.key();
+            _order  = order;
+
+            return this;
+        }
+
+        /**
+         * set the order for query by an indexed field
+         *
+         * @param field the column name of a field annotated with {@link com.hendrix.triorm.annotations.TriIndex}
+         * @param order the order
+         *
+         * @return the Builder
+         *
+         * @throws java.lang.IllegalArgumentException if the field is not indexed
+         *
+         * @see com.hendrix.triorm.query.TriQuery.Builder
+         */
+        public Builder<E> ORDER(String field, ORDER order)
+        {
+            _by     = indexedField(field);
             _order  = order;
 
             return this;
         }
 
+        /**
+         * filter by the value of an indexed field
+         *
+         * @param field the column name of a field annotated with {@link com.hendrix.triorm.annotations.TriIndex}
+         * @param value the value, {@code null} selects the data where the field is {@code null}
+         *
+         * @return the Builder
+         *
+         * @throws java.lang.IllegalArgumentException if the field is not indexed
+         *
+         * @see com.hendrix.triorm.query.TriQuery.Builder
+         */
+        public Builder<E> where(String field, Object value)
+        {
+            String column = indexedField(field);
+
+            _fieldSelections.add("(" + column + ((value == null) ? " IS NULL)" : " = " + literal(value) + ")"));
+
+            return this;
+        }
+
+        /**
+         * filter by a window of values of an indexed field
+         *
+         * @param field the column name of a field annotated with {@link com.hendrix.triorm.annotations.TriIndex}
+         * @param from  the starting value
+         * @param to    the destination value
+         *
+         * @return the Builder
+         *
+         * @throws java.lang.IllegalArgumentException if the field is not indexed
+         *
+         * @see com.hendrix.triorm.query.TriQuery.Builder
+         */
+        public Builder<E> whereBetween(String field, Object from, Object to)
+        {
+            String column = indexedField(field);
+
+            _fieldSelections.add("(" + column + " BETWEEN " + literal(from) + " AND " + literal(to) + ")");
+
+            return this;
+        }
+
+        /**
+         * validate an indexed field
+         *
+         * @param field the column name
+         *
+         * @return the column name
+         *
+         * @throws java.lang.IllegalArgumentException if the field is not indexed
+         */
+        private String indexedField(String field)
+        {
+            if(!_ssd.isIndexedField(field))
+                throw new IllegalArgumentException("TriOrm - " + field + " is not an indexed field of table " + _ssd.TABLE_NAME());
+
+            return field;
+        }
+
+        /**
+         * a {@code SQL} literal of a value, with the same conversions that are used when the field is saved
+         *
+         * @param value the value
+         *
+         * @return the literal
+         */
+        private static String literal(Object value)
+        {
+            if(value instanceof Number)
+                return value.toString();
+
+            if(value instanceof Boolean)
+                return ((Boolean) value) ? "1" : "0";
+
+            if(value instanceof Enum)
+                return DatabaseUtils.sqlEscapeString(((Enum) value).name());
+
+            return DatabaseUtils.sqlEscapeString(String.valueOf(value));
+        }
+
         /**
          * set the limit of the query result
          *
@@ -345,6 +1200,26 @@ public class TriQuery<T extends TriData> {
             return this;
         }
 
+
+        /**
+         * read the result in keyset windows of a bounded amount of rows, instead of a single query, so the cursor
+         * windows of the platform never hold more than that many rows. iterate the query to keep the memory of the
+         * result bounded as well.
+         *
+         * @param rows the amount of rows of a window, {@code 0} to read the result with a single query
+         *
+         * @return the Builder
+         *
+         * @see com.hendrix.triorm.query.TriQuery#iterator()
+         * @see com.hendrix.triorm.query.TriQuery.Builder
+         */
+        public Builder<E> fetchSize(int rows)
+        {
+            _fetchSize = rows;
+
+            return this;
+        }
+
     }
 
 }
@@ -0,0 +1,214 @@
+package com.hendrix.triorm.query;
+
+import android.util.LruCache;
+
+import com.hendrix.triorm.TriData;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a cache of the results of the {@link TriQuery} of a single {@link com.hendrix.triorm.TriTable}, keyed by the source,
+ * selection, order and limit of the query, and bounded by the estimated size of the cached data.
+ * <p/>
+ * every write to the table invalidates all of the cached results, so a repeated query is a memory lookup only
+ * as long as the table did not change.
+ * <p/>
+ * <b>Notes:</b>
+ * <ul>
+ *      <li>cached data objects are shared by all of the callers of the same query, treat them as read only, and copy them before changing them.
+ *      <li>only writes through the table are observed, writes of raw {@code SQL} or of other processes are not.
+ * </ul>
+ *
+ * @param <T> the data type
+ *
+ * @see com.hendrix.triorm.TriDatabase.Builder#queryCache(Class, int)
+ *
+ * @author Tomer Shalev
+ */
+@SuppressWarnings("UnusedDeclaration")
+public class TriQueryCache<T extends TriData>
+{
+    /**
+     * the estimated overhead of a cached data object besides it's serialized size, in bytes
+     */
+    public static final int ENTRY_OVERHEAD  = 64;
+
+    private final LruCache<String, Entry<T>>  _cache;
+
+    /**
+     * the version of the table, bumped by every write
+     */
+    private final AtomicLong                  _version        = new AtomicLong();
+
+    private final AtomicLong                  _hits           = new AtomicLong();
+    private final AtomicLong                  _misses         = new AtomicLong();
+    private final AtomicLong                  _invalidations  = new AtomicLong();
+
+    /**
+     * @param maxBytes the maximal estimated size of all of the cached results in bytes
+     */
+    public TriQueryCache(int maxBytes)
+    {
+        _cache = new LruCache<String, Entry<T>>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Entry<T> entry) {
+                return entry.bytes;
+            }
+        };
+    }
+
+    /**
+     * get the version of the table, read it before the query is performed, and pass it to {@link #put(String, long, ArrayList, int)}
+     *
+     * @return the version
+     */
+    public long version()
+    {
+        return _version.get();
+    }
+
+    /**
+     * get a cached result
+     *
+     * @param key the key of the query
+     *
+     * @return a copy of the cached list, or {@code null} on a miss
+     */
+    public ArrayList<T> get(String key)
+    {
+        Entry<T> entry = _cache.get(key);
+
+        if(entry != null && entry.version != _version.get()) {
+            _cache.remove(key);
+
+            entry = null;
+        }
+
+        if(entry == null) {
+            _misses.incrementAndGet();
+
+            return null;
+        }
+
+        _hits.incrementAndGet();
+
+        return new ArrayList<>(entry.data);
+    }
+
+    /**
+     * query if a result is cached, without counting a hit or a miss
+     *
+     * @param key the key of the query
+     *
+     * @return {@code true} if the result is cached and the table was not written since
+     */
+    public boolean contains(String key)
+    {
+        Entry<T> entry = _cache.get(key);
+
+        return entry != null && entry.version == _version.get();
+    }
+
+    /**
+     * cache a result, unless the table was written since the version was read, or the result is larger than the cache
+     *
+     * @param key     the key of the query
+     * @param version the version of the table before the query was performed
+     * @param data    the result
+     * @param bytes   the estimated size of the result
+     */
+    public void put(String key, long version, ArrayList<T> data, int bytes)
+    {
+        if(version != _version.get() || bytes > _cache.maxSize())
+            return;
+
+        _cache.put(key, new Entry<>(version, new ArrayList<>(data), bytes));
+    }
+
+    /**
+     * invalidate all of the cached results, called on every write to the table
+     */
+    public void invalidate()
+    {
+        _version.incrementAndGet();
+        _invalidations.incrementAndGet();
+
+        _cache.evictAll();
+    }
+
+    /**
+     * @return the estimated size of the cached results in bytes
+     */
+    public int bytes()
+    {
+        return _cache.size();
+    }
+
+    /**
+     * @return the maximal estimated size of the cached results in bytes
+     */
+    public int maxBytes()
+    {
+        return _cache.maxSize();
+    }
+
+    /**
+     * @return the amount of queries answered from the cache
+     */
+    public long hits()
+    {
+        return _hits.get();
+    }
+
+    /**
+     * @return the amount of queries that were performed on the database
+     */
+    public long misses()
+    {
+        return _misses.get();
+    }
+
+    /**
+     * @return the amount of invalidations by writes
+     */
+    public long invalidations()
+    {
+        return _invalidations.get();
+    }
+
+    /**
+     * @return the amount of results that were evicted to keep the cache within it's size
+     */
+    public long evictions()
+    {
+        return _cache.evictionCount();
+    }
+
+    /**
+     * @return a printable representation of the cache metrics
+     */
+    @Override
+    public String toString()
+    {
+        return "TriQueryCache:: (bytes->" + bytes() + "/" + maxBytes() + ", hits->" + hits() + ", misses->" + misses()
+                + ", invalidations->" + invalidations() + ", evictions->" + evictions() + ")";
+    }
+
+    /**
+     * a cached result
+     */
+    private static final class Entry<T>
+    {
+        final long          version;
+        final ArrayList<T>  data;
+        final int           bytes;
+
+        Entry(long version, ArrayList<T> data, int bytes) {
+            this.version  = version;
+            this.data     = data;
+            this.bytes    = bytes;
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.hendrix.triorm.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * a thread safe, lock free Bloom filter of {@link String} keys.
+ * answers definite misses, keys it might contain have to be verified.
+ *
+ * @author Tomer Shalev
+ */
+@SuppressWarnings("UnusedDeclaration")
+public class BloomFilter {
+
+    private final AtomicLongArray _bits;
+    private final long            _numBits;
+    private final int             _numHashes;
+    private final int             _capacity;
+
+    /**
+     * @param capacity  the expected amount of keys
+     * @param fpp       the false positive probability at capacity, for example {@code 0.01}
+     */
+    public BloomFilter(int capacity, double fpp) {
+        capacity    = Math.max(1, capacity);
+
+        long bits   = (long) Math.ceil(-capacity * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        int  words  = (int) Math.max(1, (bits + 63) / 64);
+
+        _bits       = new AtomicLongArray(words);
+        _numBits    = words * 64L;
+        _numHashes  = Math.max(1, (int) Math.round((double) _numBits / capacity * Math.log(2)));
+        _capacity   = capacity;
+    }
+
+    /**
+     * @return the expected amount of keys
+     */
+    public int capacity() {
+        return _capacity;
+    }
+
+    /**
+     * add a key
+     *
+     * @param key the key
+     */
+    public void add(String key) {
+        long hash = hash(key);
+        int  h1   = (int) hash;
+        int  h2   = (int) (hash >>> 32);
+
+        for (int ix = 1; ix <= _numHashes; ix++) {
+            long bit  = ((h1 + ix * h2) & Long.MAX_VALUE) % _numBits;
+            int  word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long old;
+
+            do {
+                old = _bits.get(word);
+            } while((old & mask) == 0 && !_bits.compareAndSet(word, old, old | mask));
+        }
+    }
+
+    /**
+     * query a key
+     *
+     * @param key the key
+     *
+     * @return {@code false} if the key was definitely never added, {@code true} if it might have been
+     */
+    public boolean mightContain(String key) {
+        long hash = hash(key);
+        int  h1   = (int) hash;
+        int  h2   = (int) (hash >>> 32);
+
+        for (int ix = 1; ix <= _numHashes; ix++) {
+            long bit = ((h1 + ix * h2) & Long.MAX_VALUE) % _numBits;
+
+            if((_bits.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * 64 bit {@code FNV-1a} of the characters, followed by the {@code MurmurHash3} finalizer
+     */
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+
+        for (int ix = 0; ix < key.length(); ix++) {
+            h ^= key.charAt(ix);
+            h *= 0x100000001b3L;
+        }
+
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+
+        return h;
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.hendrix.triorm.utils;
+
+import com.hendrix.triorm.interfaces.IIdGenerator;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * the default lock free, time ordered identifier generator.
+ * an identifier is the {@link #PREFIX} marker, a fixed width hex string of a {@code 64} bit sequence and a
+ * random node suffix:
+ * <ul>
+ *      <li>the marker sorts above every digit, so identifiers of this generator always come after the legacy
+ *      decimal identifiers (seconds since the epoch) of rows that were stored before it was the default. a table
+ *      that mixes both formats keeps the legacy rows first and the new rows in creation order after them.
+ *      <li>the sequence is the current time in milliseconds shifted by {@link #SEQUENCE_BITS}, so every millisecond
+ *      has room for {@code 1024} identifiers. the sequence is strictly increasing by a {@code CAS} loop, and a burst
+ *      larger than that borrows from the next milliseconds instead of colliding.
+ *      <li>the node suffix is random per generator, so identifiers of different devices/processes do not collide.
+ * </ul>
+ * fixed width keeps the lexical order equal to the creation order.
+ *
+ * @author Tomer Shalev
+ */
+@SuppressWarnings("UnusedDeclaration")
+public class MonotonicIdGenerator implements IIdGenerator {
+    /**
+     * amount of low bits of the sequence reserved for identifiers within the same millisecond
+     */
+    public static final int SEQUENCE_BITS = 10;
+
+    /**
+     * the leading marker of every identifier, above {@code '9'} so the new identifiers sort after the legacy decimal ones
+     */
+    public static final char PREFIX = 'x';
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final AtomicLong  _last = new AtomicLong();
+    private final String      _node;
+
+    public MonotonicIdGenerator() {
+        _node = hex(new SecureRandom().nextInt() & 0xFFFFFF, 6);
+    }
+
+    @Override
+    public String nextId() {
+        long now = System.currentTimeMillis() << SEQUENCE_BITS;
+        long last, next;
+
+        do {
+            last = _last.get();
+            next = Math.max(now, last + 1);
+        } while(!_last.compareAndSet(last, next));
+
+        return PREFIX + hex(next, 16) + _node;
+    }
+
+    /**
+     * fixed width lower case hex
+     *
+     * @param value the value
+     * @param width amount of digits
+     *
+     * @return the hex string
+     */
+    private static String hex(long value, int width) {
+        char[] chars = new char[width];
+
+        for (int ix = width - 1; ix >= 0; ix--, value >>>= 4)
+            chars[ix] = HEX[(int)(value & 0xF)];
+
+        return new String(chars);
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.hendrix.triorm.utils;
+
+import com.hendrix.triorm.interfaces.IIdGenerator;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * the lock free, time ordered identifier generator of the tables of the
+ * {@link com.hendrix.triorm.TriTable.Layout#INTEGER_KEY} layout, whose identifiers must be integers.
+ * an identifier is the decimal form of the same {@code 64} bit sequence of {@link MonotonicIdGenerator}, the current time
+ * in milliseconds shifted by {@link MonotonicIdGenerator#SEQUENCE_BITS}, without a node suffix. it is unique within
+ * the process, and is numerically above the legacy identifiers (seconds since the epoch).
+ *
+ * @author Tomer Shalev
+ */
+@SuppressWarnings("UnusedDeclaration")
+public class NumericIdGenerator implements IIdGenerator {
+    private final AtomicLong _last = new AtomicLong();
+
+    @Override
+    public String nextId() {
+        long now = System.currentTimeMillis() << MonotonicIdGenerator.SEQUENCE_BITS;
+        long last, next;
+
+        do {
+            last = _last.get();
+            next = Math.max(now, last + 1);
+        } while(!_last.compareAndSet(last, next));
+
+        return String.valueOf(next);
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.hendrix.triorm.utils;
+
+import android.os.Process;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Helper class for the background work of the {@code ORM}, like warming up tables.
+ * all of the work is carried by a single, lazily created, low priority daemon thread, so it never
+ * competes with the main thread. the purges of the retention have a thread of their own, since they pause
+ * between batches, and would hold back the rest of the background work.
+ *
+ * @author Tomer Shalev
+ */
+@SuppressWarnings("UnusedDeclaration")
+public class SExecutors {
+
+    private static ScheduledExecutorService _background = null;
+    private static ScheduledExecutorService _purge      = null;
+
+    private SExecutors() {
+    }
+
+    /**
+     * get the shared background executor
+     *
+     * @return a single threaded {@link ScheduledExecutorService} running with background priority
+     */
+    synchronized static public ScheduledExecutorService background()
+    {
+        if(_background == null)
+            _background = new ScheduledThreadPoolExecutor(1, new BackgroundThreadFactory("TriOrm-background-"));
+
+        return _background;
+    }
+
+    /**
+     * get the executor of the purges of the retention
+     *
+     * @return a single threaded {@link ScheduledExecutorService} running with background priority
+     */
+    synchronized static public ScheduledExecutorService purge()
+    {
+        if(_purge == null)
+            _purge = new ScheduledThreadPoolExecutor(1, new BackgroundThreadFactory("TriOrm-purge-"));
+
+        return _purge;
+    }
+
+    /**
+     * creates low priority daemon threads
+     */
+    private static class BackgroundThreadFactory implements ThreadFactory {
+        private final AtomicInteger _count = new AtomicInteger();
+        private final String        _name;
+
+        BackgroundThreadFactory(String name) {
+            _name = name;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, _name + _count.incrementAndGet());
+
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
+
+}
@@ -1,10 +1,13 @@
 package com.hendrix.triorm.utils;
 
 import com.hendrix.triorm.TriData;
+import com.hendrix.triorm.annotations.TriIndex;
 import com.hendrix.triorm.annotations.TriTable;
 import com.hendrix.triorm.exceptions.TableAnnotationException;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.util.LinkedHashMap;
 
 /**
  * a Helper class for {@code Reflections} utilities
@@ -44,6 +47,11 @@ public class SReflection {
                 TriTable triTable = (TriTable) annotation;
 
                 meta = new Meta<>(triTable.dbName(), triTable.tableName(), cls);
+
+                meta.max_age  = triTable.maxAge();
+                meta.max_rows = triTable.maxRows();
+                meta.layout   = triTable.layout();
+                meta.partition= triTable.partition();
              }
         }
 
@@ -53,6 +61,39 @@ public class SReflection {
         return meta;
     }
 
+    /**
+     * extract the fields of a {@link com.hendrix.triorm.TriData} that are annotated with {@link com.hendrix.triorm.annotations.TriIndex},
+     * including the fields of it's super classes.
+     *
+     * @param cls the class type of the extended {@link com.hendrix.triorm.TriData}
+     *
+     * @return accessible fields by their column name
+     *
+     * @throws com.hendrix.triorm.exceptions.TableAnnotationException if two fields have the same column name
+     */
+    public static LinkedHashMap<String, Field> extractIndexedFields(Class<? extends TriData> cls) {
+        LinkedHashMap<String, Field> fields = new LinkedHashMap<>();
+
+        for (Class<?> c = cls; c != null && c != TriData.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                TriIndex index = field.getAnnotation(TriIndex.class);
+
+                if(index == null)
+                    continue;
+
+                String name = index.name().isEmpty() ? field.getName() : index.name();
+
+                if(fields.containsKey(name))
+                    throw new TableAnnotationException("column " + name + " is indexed twice in " + cls.getName());
+
+                field.setAccessible(true);
+                fields.put(name, field);
+            }
+        }
+
+        return fields;
+    }
+
     /**
      * a class representing the meta data represented by {@link com.hendrix.triorm.annotations.TriTable} annotation
      */
@@ -60,6 +101,10 @@ public class SReflection {
         private String db_name = null;
         private String table_name = null;
         private Class<T> type = null;
+        private long max_age = 0L;
+        private int max_rows = 0;
+        private com.hendrix.triorm.TriTable.Layout layout = com.hendrix.triorm.TriTable.Layout.ROWID;
+        private com.hendrix.triorm.TriTable.Partition partition = com.hendrix.triorm.TriTable.Partition.NONE;
 
         /**
          *
@@ -98,6 +143,38 @@ public class SReflection {
             return type;
         }
 
+        /**
+         *
+         * @return maximal age of the data in milliseconds, {@code 0} for none
+         */
+        public long getMaxAge() {
+            return max_age;
+        }
+
+        /**
+         *
+         * @return maximal amount of rows, {@code 0} for none
+         */
+        public int getMaxRows() {
+            return max_rows;
+        }
+
+        /**
+         *
+         * @return the physical layout of the table
+         */
+        public com.hendrix.triorm.TriTable.Layout getLayout() {
+            return layout;
+        }
+
+        /**
+         *
+         * @return the time partitioning of the table
+         */
+        public com.hendrix.triorm.TriTable.Partition getPartition() {
+            return partition;
+        }
+
     }
 
     public static String logicName(Meta meta){
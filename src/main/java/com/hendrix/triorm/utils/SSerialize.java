@@ -2,22 +2,38 @@ package com.hendrix.triorm.utils;
 
 import android.util.Base64;
 
+import com.hendrix.triorm.exceptions.CorruptedDataException;
+import com.hendrix.triorm.interfaces.IClassDictionary;
+
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 
 /**
  * Helper class utilities for {@code serializing} and {@code deserialize} {@code Typed} objects into/from
  * {@code byte arrays} and {@code base64 encoded} strings.
+ * <p/>
+ * objects can also be serialized against an {@link IClassDictionary}, in a compact form that starts with
+ * {@link #COMPACT_MAGIC} instead of the stream header, and holds a reference instead of every class descriptor.
+ * {@link #deserialize(byte[], IClassDictionary)} decodes both forms.
  *
  * @author Tomer Shalev
  */
 @SuppressWarnings("UnusedDeclaration")
 public class SSerialize {
 
+    /**
+     * the first bytes of the compact form, a standard stream starts with {@code 0xACED}
+     */
+    public static final byte[] COMPACT_MAGIC = new byte[] { 'T', 'C' };
+
     private SSerialize() {
     }
 
@@ -99,4 +115,235 @@ public class SSerialize {
         return o;
     }
 
+    /**
+     * Serialize a {@link Serializable} object -> compact {@code byte[]}, with references of a dictionary instead of
+     * the class descriptors. falls back to {@link #serializeToByteArray(Serializable)} if the dictionary failed.
+     *
+     * @param obj         {@link Serializable} object
+     * @param dictionary  the dictionary of the class descriptors
+     * @param <T>         parameter type that extends {@link Serializable}
+     *
+     * @return {@code byte array}
+     */
+    static public<T extends Serializable> byte[] serializeToByteArray(T obj, IClassDictionary dictionary)
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        try {
+            baos.write(COMPACT_MAGIC);
+
+            ObjectOutputStream oos = new CompactOutputStream( baos, dictionary );
+            oos.writeObject( obj );
+            oos.close();
+        } catch (IOException e) {
+            return serializeToByteArray(obj);
+        }
+
+        return baos.toByteArray();
+    }
+
+    /**
+     * De-Serializes a standard or compact {@code byte[]} -> {@link Serializable} Typed Object.
+     *
+     * @param data        byte array
+     * @param dictionary  the dictionary the compact form was serialized with, may be {@code null} for standard ones
+     * @param <T>         parameter type that extends {@link Serializable}
+     *
+     * @return {@link Serializable} Typed Object, or {@code null} if standard data could not be de-serialized
+     *
+     * @throws CorruptedDataException if compact data could not be de-serialized, or has no dictionary
+     */
+    @SuppressWarnings("unchecked")
+    static public <T extends Serializable> T deserialize(byte [] data, IClassDictionary dictionary)
+    {
+        if(!isCompact(data))
+            return deserialize(data);
+
+        if(dictionary == null)
+            throw new CorruptedDataException("compact data without a class dictionary");
+
+        T o;
+
+        try {
+            ObjectInputStream ois = new CompactInputStream(new ByteArrayInputStream( data, COMPACT_MAGIC.length, data.length - COMPACT_MAGIC.length ), dictionary);
+            o                     = (T)ois.readObject();
+            ois.close();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new CorruptedDataException("compact data could not be de-serialized", e);
+        }
+
+        return o;
+    }
+
+    /**
+     * De-Serializes a standard or compact {@link ByteBuffer} -> {@link Serializable} Typed Object, without copying it,
+     * from it's position to it's limit. useful for memory mapped files.
+     *
+     * @param buffer      the buffer, it's position is advanced
+     * @param dictionary  the dictionary the compact form was serialized with, may be {@code null} for standard ones
+     * @param <T>         parameter type that extends {@link Serializable}
+     *
+     * @return {@link Serializable} Typed Object
+     *
+     * @throws CorruptedDataException if the buffer could not be de-serialized, or is compact and has no dictionary
+     */
+    @SuppressWarnings("unchecked")
+    static public <T extends Serializable> T deserialize(ByteBuffer buffer, IClassDictionary dictionary)
+    {
+        boolean compact = isCompact(buffer);
+
+        if(compact && dictionary == null)
+            throw new CorruptedDataException("compact data without a class dictionary");
+
+        T o;
+
+        try {
+            InputStream in = new ByteBufferInputStream(buffer);
+
+            if(compact)
+                buffer.position(buffer.position() + COMPACT_MAGIC.length);
+
+            ObjectInputStream ois = compact ? new CompactInputStream(in, dictionary) : new ObjectInputStream(in);
+            o                     = (T)ois.readObject();
+            ois.close();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new CorruptedDataException("data could not be de-serialized", e);
+        }
+
+        return o;
+    }
+
+    /**
+     * query the form of serialized data
+     *
+     * @param data byte array
+     *
+     * @return {@code true} if it was serialized with {@link #serializeToByteArray(Serializable, IClassDictionary)}
+     */
+    static public boolean isCompact(byte [] data)
+    {
+        if(data == null || data.length < COMPACT_MAGIC.length)
+            return false;
+
+        for (int ix = 0; ix < COMPACT_MAGIC.length; ix++) {
+            if(data[ix] != COMPACT_MAGIC[ix])
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * query the form of serialized data, without moving the position of the buffer
+     *
+     * @param buffer the serialized data, from it's position
+     *
+     * @return {@code true} if it was serialized with {@link #serializeToByteArray(Serializable, IClassDictionary)}
+     */
+    static public boolean isCompact(ByteBuffer buffer)
+    {
+        if(buffer == null || buffer.remaining() < COMPACT_MAGIC.length)
+            return false;
+
+        for (int ix = 0; ix < COMPACT_MAGIC.length; ix++) {
+            if(buffer.get(buffer.position() + ix) != COMPACT_MAGIC[ix])
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * writes the reference of every class descriptor, and no stream header
+     */
+    private static final class CompactOutputStream extends ObjectOutputStream
+    {
+        private final IClassDictionary _dictionary;
+
+        CompactOutputStream(OutputStream out, IClassDictionary dictionary) throws IOException
+        {
+            super(out);
+
+            _dictionary = dictionary;
+        }
+
+        @Override
+        protected void writeStreamHeader() throws IOException
+        {
+        }
+
+        @Override
+        protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException
+        {
+            writeInt(_dictionary.idOf(desc));
+        }
+    }
+
+    /**
+     * reads the remaining bytes of a buffer
+     */
+    private static final class ByteBufferInputStream extends InputStream
+    {
+        private final ByteBuffer _buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer)
+        {
+            _buffer = buffer;
+        }
+
+        @Override
+        public int read()
+        {
+            return _buffer.hasRemaining() ? _buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length)
+        {
+            if(length == 0)
+                return 0;
+
+            if(!_buffer.hasRemaining())
+                return -1;
+
+            length = Math.min(length, _buffer.remaining());
+
+            _buffer.get(bytes, offset, length);
+
+            return length;
+        }
+
+        @Override
+        public int available()
+        {
+            return _buffer.remaining();
+        }
+    }
+
+    /**
+     * reads the class descriptors from their references, without a stream header
+     */
+    private static final class CompactInputStream extends ObjectInputStream
+    {
+        private final IClassDictionary _dictionary;
+
+        CompactInputStream(InputStream in, IClassDictionary dictionary) throws IOException
+        {
+            super(in);
+
+            _dictionary = dictionary;
+        }
+
+        @Override
+        protected void readStreamHeader() throws IOException
+        {
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException
+        {
+            return _dictionary.descriptorOf(readInt());
+        }
+    }
+
 }
@@ -0,0 +1,389 @@
+package com.hendrix.triorm;
+
+import android.database.DatabaseUtils;
+
+import com.hendrix.triorm.interfaces.IMigration;
+import com.hendrix.triorm.utils.SExecutors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * behavior of {@link TriTable} against a database
+ *
+ * @author Tomer Shalev
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 21)
+public class TriTableTest {
+    private static final String DB_NAME = "triorm_table_test";
+
+    @com.hendrix.triorm.annotations.TriTable(dbName = DB_NAME, tableName = "migrated")
+    public static class Migrated extends TriData {
+        private static final long serialVersionUID = 0L;
+
+        public int migrations = 0;
+
+        public Migrated() {
+        }
+
+        public Migrated(String id) {
+            super(id);
+        }
+    }
+
+    @com.hendrix.triorm.annotations.TriTable(dbName = DB_NAME, tableName = "looked_up")
+    public static class LookedUp extends TriData {
+        private static final long serialVersionUID = 0L;
+
+        public LookedUp() {
+        }
+
+        public LookedUp(String id) {
+            super(id);
+        }
+    }
+
+    @com.hendrix.triorm.annotations.TriTable(dbName = DB_NAME, tableName = "event")
+    public static class Event extends TriData {
+        private static final long serialVersionUID = 0L;
+
+        public Event() {
+        }
+
+        public Event(String id, long timeCreated) {
+            super(id);
+
+            setTimeCreated(timeCreated);
+        }
+    }
+
+    @com.hendrix.triorm.annotations.TriTable(dbName = DB_NAME, tableName = "blobbed")
+    public static class Blobbed extends TriData {
+        private static final long serialVersionUID = 0L;
+
+        public byte[] payload = null;
+
+        public Blobbed() {
+        }
+
+        public Blobbed(String id, int size) {
+            super(id);
+
+            payload = new byte[size];
+
+            new Random(size + id.hashCode()).nextBytes(payload);
+        }
+    }
+
+    @com.hendrix.triorm.annotations.TriTable(dbName = DB_NAME, tableName = "checked")
+    public static class Checked extends TriData {
+        private static final long serialVersionUID = 0L;
+
+        public String text = null;
+
+        public Checked() {
+        }
+
+        public Checked(String id, String text) {
+            super(id);
+
+            this.text = text;
+        }
+    }
+
+    private TriDatabase _database = null;
+
+    @Before
+    public void setUp() {
+        RuntimeEnvironment.application.deleteDatabase(DB_NAME);
+        deleteBlobs();
+    }
+
+    @After
+    public void tearDown() {
+        if(_database != null)
+            _database.close();
+
+        RuntimeEnvironment.application.deleteDatabase(DB_NAME);
+        deleteBlobs();
+    }
+
+    @Test
+    public void interruptedMigrationResumesFromTheLastBatch() {
+        _database = new TriDatabase.Builder(RuntimeEnvironment.application).name(DB_NAME).Version(1).addTable(Migrated.class).build();
+
+        for (int ix = 0; ix < 10; ix++)
+            new Migrated(String.format("m%02d", ix)).save();
+
+        _database.close();
+
+        // the fifth row fails once, in the second batch
+        IMigration<Migrated> migration = new IMigration<Migrated>() {
+            private int _calls = 0;
+
+            @Override
+            public Migrated migrate(Migrated data, int oldVersion, int newVersion) {
+                if(++_calls == 5)
+                    throw new IllegalStateException("interrupted");
+
+                data.migrations++;
+
+                return data;
+            }
+        };
+
+        _database = new TriDatabase.Builder(RuntimeEnvironment.application).name(DB_NAME).Version(2).addTable(Migrated.class, migration).build();
+
+        TriTable<Migrated> table = _database.getTable(Migrated.class);
+
+        table.MIGRATION_BATCH_SIZE = 3;
+
+        try {
+            table.open();
+            fail("the migration was not interrupted");
+        } catch (IllegalStateException e) {
+            assertEquals("m02", TriMeta.lastId(table.database(), "migrated"));
+        }
+
+        table.open();
+
+        assertNull(TriMeta.lastId(table.database(), "migrated"));
+        assertEquals(2, TriMeta.version(table.database(), "migrated"));
+
+        for (int ix = 0; ix < 10; ix++)
+            assertEquals(1, TriOrm.load(Migrated.class, String.format("m%02d", ix)).migrations);
+    }
+
+    @Test
+    public void bloomFilterHasNoFalseNegativesAfterARollback() throws Exception {
+        _database = new TriDatabase.Builder(RuntimeEnvironment.application).name(DB_NAME).addTable(LookedUp.class)
+                                                                           .bloomFilter(LookedUp.class, 4).build();
+
+        final TriTable<LookedUp> table = _database.getTable(LookedUp.class);
+
+        // the first use is rolled back together with the schema
+        try {
+            _database.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    new LookedUp("r00").save();
+
+                    throw new IllegalStateException("rolled back");
+                }
+            });
+            fail("the transaction was not rolled back");
+        } catch (IllegalStateException ignore) {
+        }
+
+        for (int ix = 0; ix < 3; ix++)
+            new LookedUp(String.format("c%02d", ix)).save();
+
+        // the adds overflow the filter and rebuild it, while the deletes are rolled back
+        try {
+            _database.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    for (int ix = 0; ix < 3; ix++)
+                        table.delete(String.format("c%02d", ix));
+
+                    for (int ix = 0; ix < 6; ix++)
+                        new LookedUp(String.format("r%02d", ix + 1)).save();
+
+                    throw new IllegalStateException("rolled back");
+                }
+            });
+            fail("the transaction was not rolled back");
+        } catch (IllegalStateException ignore) {
+        }
+
+        // wait for the rebuild
+        SExecutors.background().submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get();
+
+        for (int ix = 0; ix < 3; ix++)
+            assertTrue(table.exists(String.format("c%02d", ix)));
+
+        for (int ix = 0; ix < 7; ix++)
+            assertFalse(table.exists(String.format("r%02d", ix)));
+
+        new LookedUp("c03").save();
+
+        assertTrue(table.exists("c03"));
+    }
+
+    @Test
+    public void partitionsRouteTheRowsAndExpiredOnesAreDropped() {
+        long day = 24 * 60 * 60 * 1000L;
+        long now = System.currentTimeMillis();
+
+        _database = new TriDatabase.Builder(RuntimeEnvironment.application).name(DB_NAME).addTable(Event.class)
+                                                                           .partition(Event.class, TriTable.Partition.DAILY)
+                                                                           .retention(Event.class, new TriRetention(10 * day, 0).pause(0)).build();
+
+        TriTable<Event> table = _database.getTable(Event.class);
+
+        new Event("e0", now - 30 * day).save();
+        new Event("e1", now - 30 * day).save();
+        new Event("e2", now - 20 * day).save();
+        new Event("e3", now).save();
+        new Event("e4", now).save();
+
+        assertEquals(3, partitions(table));
+        assertEquals(2, TriOrm.query(Event.class).timeCreatedFrom(now - 31 * day).timeCreatedTo(now - 29 * day).build().count());
+
+        // a save with another time moves the row into the partition of it's new period
+        Event moved = TriOrm.load(Event.class, "e2");
+
+        moved.setTimeCreated(now);
+        moved.save();
+
+        assertEquals(3, TriOrm.query(Event.class).timeCreatedFrom(now - day).timeCreatedTo(now + day).build().count());
+        assertEquals(5, table.getDataCount());
+
+        // the expired partitions are dropped as a whole, the empty one included
+        assertEquals(2, table.purge());
+        assertEquals(1, partitions(table));
+        assertNull(TriOrm.load(Event.class, "e0"));
+        assertNull(TriOrm.load(Event.class, "e1"));
+
+        for (String id : new String[] { "e2", "e3", "e4" })
+            assertEquals(id, TriOrm.load(Event.class, id).getId());
+
+        table.delete("e3");
+
+        assertNull(TriOrm.load(Event.class, "e3"));
+        assertEquals(2, table.getDataCount());
+    }
+
+    /**
+     * @return the amount of partitions of a table in the database
+     */
+    private static long partitions(TriTable<?> table) {
+        return DatabaseUtils.longForQuery(table.getReadableDatabase(), "SELECT count(*) FROM sqlite_master WHERE type = 'table' AND name GLOB ?",
+                                          new String[] { table.TABLE_NAME() + "_p[0-9]*" });
+    }
+
+    @Test
+    public void blobSweepDeletesOnlyTheReleasedFiles() throws Exception {
+        _database = new TriDatabase.Builder(RuntimeEnvironment.application).name(DB_NAME).addTable(Blobbed.class)
+                                                                           .externalBlobs(Blobbed.class, 1024).build();
+
+        final TriTable<Blobbed> table = _database.getTable(Blobbed.class);
+
+        table.BLOB_SWEEP_DELAY = 0;
+
+        for (int ix = 0; ix < 3; ix++)
+            new Blobbed(String.format("b%02d", ix), 4096).save();
+
+        new Blobbed("b03", 16).save();
+
+        assertEquals(3, blobs().length);
+
+        // a delete and an overwrite release their files, a rolled back delete does not
+        table.delete("b00");
+        new Blobbed("b01", 8192).save();
+
+        try {
+            _database.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    table.delete("b02");
+
+                    throw new IllegalStateException("rolled back");
+                }
+            });
+            fail("the transaction was not rolled back");
+        } catch (IllegalStateException ignore) {
+        }
+
+        // wait for the scheduled sweeps, and sweep once more
+        SExecutors.background().submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get();
+
+        table.sweepBlobs();
+
+        assertEquals(2, blobs().length);
+        assertNull(TriOrm.load(Blobbed.class, "b00"));
+        assertArrayEquals(new Blobbed("b01", 8192).payload, TriOrm.load(Blobbed.class, "b01").payload);
+        assertArrayEquals(new Blobbed("b02", 4096).payload, TriOrm.load(Blobbed.class, "b02").payload);
+        assertArrayEquals(new Blobbed("b03", 16).payload, TriOrm.load(Blobbed.class, "b03").payload);
+    }
+
+    @Test
+    public void dirtyCheckingSkipsOnlyUnchangedWrites() {
+        _database = new TriDatabase.Builder(RuntimeEnvironment.application).name(DB_NAME).addTable(Checked.class)
+                                                                           .dirtyChecking(Checked.class).build();
+
+        TriTable<Checked> table = _database.getTable(Checked.class);
+        Checked           data  = new Checked("k00", "first");
+
+        data.save();
+
+        assertEquals(0, table.skippedWrites());
+
+        data.save();
+
+        assertEquals(2, table.checkedWrites());
+        assertEquals(1, table.skippedWrites());
+
+        data.text = "second";
+        data.save();
+
+        assertEquals(1, table.skippedWrites());
+        assertEquals("second", TriOrm.load(Checked.class, "k00").text);
+
+        data.setType("moved");
+        data.save();
+
+        assertEquals(1, table.skippedWrites());
+        assertEquals("moved", TriOrm.load(Checked.class, "k00").getType());
+
+        TriOrm.load(Checked.class, "k00").save();
+
+        assertEquals(5, table.checkedWrites());
+        assertEquals(2, table.skippedWrites());
+    }
+
+    /**
+     * @return the files of the blobs of {@link Blobbed}
+     */
+    private static File[] blobs() {
+        File[] files = blobsDirectory().listFiles();
+
+        return (files == null) ? new File[0] : files;
+    }
+
+    private static File blobsDirectory() {
+        File database = RuntimeEnvironment.application.getDatabasePath(DB_NAME);
+
+        return new File(database.getParentFile(), DB_NAME + "-blobs" + File.separator + "blobbed");
+    }
+
+    private static void deleteBlobs() {
+        for (File file : blobs())
+            file.delete();
+    }
+
+}
@@ -0,0 +1,157 @@
+package com.hendrix.triorm.bench;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * a lock free histogram of latencies in microseconds, with a bounded relative error. values below {@code 32us}
+ * are exact, larger ones are kept in {@code 16} buckets per power of two, so percentiles are within about {@code 6%}.
+ * it is cheap enough to record every operation of a load test from many threads.
+ *
+ * @author Tomer Shalev
+ */
+@SuppressWarnings("UnusedDeclaration")
+public final class LatencyHistogram {
+
+    private static final int    EXACT       = 32;
+    private static final int    SUB_BITS    = 4;
+    private static final int    SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int    MAX_EXP     = 40;
+    private static final int    BUCKETS     = EXACT + (MAX_EXP - 4) * SUB_BUCKETS;
+
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * record a latency
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos)
+    {
+        _counts.incrementAndGet(indexOf(Math.max(0L, nanos / 1000L)));
+    }
+
+    /**
+     * add the latencies of another histogram
+     *
+     * @param other the other histogram
+     */
+    public void add(LatencyHistogram other)
+    {
+        for (int ix = 0; ix < BUCKETS; ix++) {
+            long count = other._counts.get(ix);
+
+            if(count != 0)
+                _counts.addAndGet(ix, count);
+        }
+    }
+
+    /**
+     * move the recorded latencies into a new histogram, and start over. latencies that are recorded
+     * meanwhile end up in one of them.
+     *
+     * @return the histogram of the latencies that were recorded so far
+     */
+    public LatencyHistogram reset()
+    {
+        LatencyHistogram snapshot = new LatencyHistogram();
+
+        for (int ix = 0; ix < BUCKETS; ix++) {
+            long count = _counts.getAndSet(ix, 0L);
+
+            if(count != 0)
+                snapshot._counts.set(ix, count);
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * @return the amount of recorded latencies
+     */
+    public long count()
+    {
+        long count = 0L;
+
+        for (int ix = 0; ix < BUCKETS; ix++)
+            count += _counts.get(ix);
+
+        return count;
+    }
+
+    /**
+     * get a percentile
+     *
+     * @param percentile the percentile, between {@code 0} and {@code 100}, e.g. {@code 99.9}
+     *
+     * @return the latency in microseconds, the upper bound of it's bucket, or {@code 0} if nothing was recorded
+     */
+    public long percentile(double percentile)
+    {
+        long count = count();
+
+        if(count == 0)
+            return 0L;
+
+        long rank   = Math.max(1L, (long) Math.ceil(count * percentile / 100.0));
+        long seen   = 0L;
+
+        for (int ix = 0; ix < BUCKETS; ix++) {
+            seen += _counts.get(ix);
+
+            if(seen >= rank)
+                return upperOf(ix);
+        }
+
+        return upperOf(BUCKETS - 1);
+    }
+
+    /**
+     * @return the largest recorded latency in microseconds, the upper bound of it's bucket
+     */
+    public long max()
+    {
+        for (int ix = BUCKETS - 1; ix >= 0; ix--) {
+            if(_counts.get(ix) != 0)
+                return upperOf(ix);
+        }
+
+        return 0L;
+    }
+
+    private static int indexOf(long micros)
+    {
+        if(micros < EXACT)
+            return (int) micros;
+
+        int exp = 63 - Long.numberOfLeadingZeros(micros);
+
+        if(exp >= MAX_EXP)
+            return BUCKETS - 1;
+
+        int sub = (int) (micros >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+
+        return EXACT + (exp - 5) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperOf(int index)
+    {
+        if(index < EXACT)
+            return index;
+
+        int exp = (index - EXACT) / SUB_BUCKETS + 5;
+        int sub = (index - EXACT) % SUB_BUCKETS;
+
+        return ((long) (SUB_BUCKETS + sub + 1) << (exp - SUB_BITS)) - 1;
+    }
+
+    /**
+     * @return a printable summary
+     */
+    @Override
+    public String toString()
+    {
+        return "(n->" + count() + ", p50->" + percentile(50) + "us, p99->" + percentile(99) + "us, p999->" + percentile(99.9)
+                + "us, max->" + max() + "us)";
+    }
+
+}
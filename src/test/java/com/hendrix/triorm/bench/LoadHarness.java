@@ -0,0 +1,490 @@
+package com.hendrix.triorm.bench;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabaseLockedException;
+
+import com.hendrix.triorm.TriData;
+import com.hendrix.triorm.TriDatabase;
+import com.hendrix.triorm.TriTable;
+import com.hendrix.triorm.query.TriQuery;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * a multi threaded load and soak test of a scratch database with a few tables. worker threads run a weighted mix of
+ * saves, loads by identifier, range queries and deletes for a while, and every interval the throughput, the latency
+ * percentiles of every operation, the lock failures, the stalls and the growth of the tables are reported, so a
+ * long run shows how the database degrades as it grows.
+ * <p/>
+ * it runs on the {@code JVM} under Robolectric, which provides {@code android.database.sqlite}, see
+ * {@code LoadHarnessTest}. with a longer duration and a listener:
+ *
+ * <pre>
+ * {@code
+ * LoadHarness.Config config = new LoadHarness.Config();
+ *
+ * config.threads        = 8;
+ * config.durationMillis = 60 * 60 * 1000L;
+ *
+ * Log.d("load", LoadHarness.run(context, config, new LoadHarness.Listener() {
+ *     public void onInterval(LoadHarness.Interval interval) { Log.d("load", interval.toString()); }
+ * }).toString());
+ * }
+ * </pre>
+ *
+ * @author Tomer Shalev
+ */
+@SuppressWarnings("UnusedDeclaration")
+public final class LoadHarness {
+
+    private LoadHarness() {
+    }
+
+    /**
+     * the operations of the mix
+     */
+    public enum Op {
+        SAVE, LOAD, QUERY, DELETE
+    }
+
+    /**
+     * the configuration of a run
+     */
+    public static class Config {
+        public String databaseName    = "triorm_load";
+        /**
+         * amount of worker threads
+         */
+        public int    threads         = 8;
+        /**
+         * amount of tables, up to {@code 3}
+         */
+        public int    tables          = 3;
+        public long   durationMillis  = 60 * 1000L;
+        public long   intervalMillis  = 5 * 1000L;
+        /**
+         * amount of rows every table starts with
+         */
+        public int    seedRows        = 10000;
+        /**
+         * size of the payload of every saved object
+         */
+        public int    payloadBytes    = 512;
+        /**
+         * relative weights of the operations
+         */
+        public int    saveWeight      = 40;
+        public int    loadWeight      = 40;
+        public int    queryWeight     = 15;
+        public int    deleteWeight    = 5;
+        /**
+         * share of the saves that overwrite an existing row, in percents
+         */
+        public int    overwritePercent = 20;
+        /**
+         * limit of a range query
+         */
+        public int    queryLimit      = 100;
+        /**
+         * an operation slower than this counts as a stall, usually a wait on the connection
+         */
+        public long   stallMillis     = 100;
+        /**
+         * delete the database before and after the run
+         */
+        public boolean scratch        = true;
+    }
+
+    /**
+     * the metrics of a single interval
+     */
+    public static class Interval {
+        /**
+         * time since the start of the run
+         */
+        public long                 elapsedMillis;
+        public long                 durationMillis;
+        /**
+         * latencies by {@link Op#ordinal()}
+         */
+        public LatencyHistogram[]   latencies = new LatencyHistogram[Op.values().length];
+        /**
+         * operations that failed because the database was locked
+         */
+        public long                 locked;
+        /**
+         * operations that failed for another reason
+         */
+        public long                 errors;
+        /**
+         * operations slower than {@link Config#stallMillis}
+         */
+        public long                 stalls;
+        /**
+         * rows of all of the tables, and the size of the database file, at the end of the interval
+         */
+        public long                 rows;
+        public long                 fileBytes;
+
+        /**
+         * @return the amount of operations of the interval
+         */
+        public long ops()
+        {
+            long ops = 0L;
+
+            for (LatencyHistogram histogram : latencies)
+                ops += histogram.count();
+
+            return ops;
+        }
+
+        /**
+         * @return operations per second
+         */
+        public double throughput()
+        {
+            return (durationMillis == 0) ? 0 : ops() * 1000.0 / durationMillis;
+        }
+
+        @Override
+        public String toString()
+        {
+            StringBuilder builder = new StringBuilder("Interval:: (t->" + elapsedMillis / 1000 + "s, ops/s->" + (long) throughput()
+                    + ", locked->" + locked + ", errors->" + errors + ", stalls->" + stalls + ", rows->" + rows + ", file->" + fileBytes / 1024 + "KB)");
+
+            for (Op op : Op.values())
+                builder.append("\n  ").append(op).append(' ').append(latencies[op.ordinal()]);
+
+            return builder.toString();
+        }
+    }
+
+    /**
+     * notified on the thread of the run after every interval
+     */
+    public interface Listener {
+        void onInterval(Interval interval);
+    }
+
+    /**
+     * the result of a run
+     */
+    public static class Report {
+        public ArrayList<Interval>  intervals = new ArrayList<>();
+        /**
+         * the interval of the whole run
+         */
+        public Interval             total;
+
+        @Override
+        public String toString()
+        {
+            StringBuilder builder = new StringBuilder("LoadHarness:: " + total);
+
+            if(intervals.size() > 1) {
+                Interval first  = intervals.get(0);
+                Interval last   = intervals.get(intervals.size() - 1);
+
+                builder.append("\ntrend:: (ops/s->").append((long) first.throughput()).append(" -> ").append((long) last.throughput());
+
+                for (Op op : Op.values())
+                    builder.append(", ").append(op).append(" p99->").append(first.latencies[op.ordinal()].percentile(99)).append("us -> ")
+                           .append(last.latencies[op.ordinal()].percentile(99)).append("us");
+
+                builder.append(", rows->").append(first.rows).append(" -> ").append(last.rows).append(')');
+            }
+
+            return builder.toString();
+        }
+    }
+
+    public static class LoadUser extends TriData {
+        private static final long serialVersionUID = 0L;
+
+        public String payload = null;
+        public int    version = 0;
+
+        public LoadUser() {
+        }
+    }
+
+    public static class LoadEvent extends TriData {
+        private static final long serialVersionUID = 0L;
+
+        public String payload = null;
+        public int    version = 0;
+
+        public LoadEvent() {
+        }
+    }
+
+    public static class LoadNote extends TriData {
+        private static final long serialVersionUID = 0L;
+
+        public String payload = null;
+        public int    version = 0;
+
+        public LoadNote() {
+        }
+    }
+
+    /**
+     * run the load, this blocks for the duration of the run
+     *
+     * @param ctx       a context
+     * @param config    the configuration
+     * @param listener  notified after every interval, may be {@code null}
+     *
+     * @return the {@link Report}
+     */
+    @SuppressWarnings("deprecation") // the scratch database name is configurable, so the tables can not be declared by annotations
+    public static Report run(Context ctx, final Config config, Listener listener) {
+        if(config.scratch)
+            ctx.deleteDatabase(config.databaseName);
+
+        TriDatabase.Builder builder = new TriDatabase.Builder(ctx).name(config.databaseName)
+                                                                  .addTable("load_user", LoadUser.class)
+                                                                  .addTable("load_event", LoadEvent.class)
+                                                                  .addTable("load_note", LoadNote.class);
+        final TriDatabase   database  = builder.build();
+        Class<?>[]          types     = new Class<?>[] { LoadUser.class, LoadEvent.class, LoadNote.class };
+        final int           count     = Math.max(1, Math.min(config.tables, types.length));
+        final Target[]      targets   = new Target[count];
+
+        for (int ix = 0; ix < count; ix++)
+            targets[ix] = new Target(database.getTable(types[ix].asSubclass(TriData.class)), types[ix].asSubclass(TriData.class));
+
+        final AtomicBoolean       stop      = new AtomicBoolean();
+        final CountDownLatch      done      = new CountDownLatch(config.threads);
+        final LatencyHistogram[]  latencies = new LatencyHistogram[Op.values().length];
+        final AtomicLongArray     failures  = new AtomicLongArray(3);
+        final String              payload   = payload(config.payloadBytes);
+        Report                    report    = new Report();
+
+        for (int ix = 0; ix < latencies.length; ix++)
+            latencies[ix] = new LatencyHistogram();
+
+        try {
+            for (final Target target : targets) {
+                database.runInTransaction(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int ix = 0; ix < config.seedRows; ix++)
+                            target.save(target.nextId(), payload);
+                    }
+                });
+            }
+
+            final long start = System.currentTimeMillis();
+
+            for (int ix = 0; ix < config.threads; ix++) {
+                final Random random = new Random(ix);
+
+                Thread worker = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            while(!stop.get())
+                                step(targets[random.nextInt(targets.length)], config, random, payload, start, latencies, failures);
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }, "TriOrm-load-" + ix);
+
+                worker.start();
+            }
+
+            report.total      = new Interval();
+
+            for (int ix = 0; ix < latencies.length; ix++)
+                report.total.latencies[ix] = new LatencyHistogram();
+
+            long last = start;
+
+            while(last - start < config.durationMillis) {
+                try {
+                    Thread.sleep(Math.min(config.intervalMillis, config.durationMillis - (last - start)));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+
+                long      now       = System.currentTimeMillis();
+                Interval  interval  = new Interval();
+
+                interval.elapsedMillis  = now - start;
+                interval.durationMillis = now - last;
+                interval.locked         = failures.getAndSet(0, 0L);
+                interval.errors         = failures.getAndSet(1, 0L);
+                interval.stalls         = failures.getAndSet(2, 0L);
+
+                for (int ix = 0; ix < latencies.length; ix++) {
+                    interval.latencies[ix] = latencies[ix].reset();
+                    report.total.latencies[ix].add(interval.latencies[ix]);
+                }
+
+                for (Target target : targets)
+                    interval.rows       += target.table.getDataCount();
+
+                interval.fileBytes      = fileBytes(ctx, config.databaseName);
+
+                report.total.locked    += interval.locked;
+                report.total.errors    += interval.errors;
+                report.total.stalls    += interval.stalls;
+                report.total.rows       = interval.rows;
+                report.total.fileBytes  = interval.fileBytes;
+
+                report.intervals.add(interval);
+
+                if(listener != null)
+                    listener.onInterval(interval);
+
+                last = now;
+            }
+
+            report.total.elapsedMillis  = last - start;
+            report.total.durationMillis = last - start;
+        } finally {
+            stop.set(true);
+
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            database.close();
+
+            if(config.scratch)
+                ctx.deleteDatabase(config.databaseName);
+        }
+
+        return report;
+    }
+
+    /**
+     * run a single operation of the mix and record it
+     */
+    private static void step(Target target, Config config, Random random, String payload, long start,
+                             LatencyHistogram[] latencies, AtomicLongArray failures) {
+        int   weight  = random.nextInt(Math.max(1, config.saveWeight + config.loadWeight + config.queryWeight + config.deleteWeight));
+        Op    op;
+
+        if((weight -= config.saveWeight) < 0)
+            op = Op.SAVE;
+        else if((weight -= config.loadWeight) < 0)
+            op = Op.LOAD;
+        else if(weight - config.queryWeight < 0)
+            op = Op.QUERY;
+        else
+            op = Op.DELETE;
+
+        long begin = System.nanoTime();
+
+        try {
+            switch (op) {
+                case SAVE:
+                    boolean overwrite = random.nextInt(100) < config.overwritePercent;
+
+                    target.save(overwrite ? target.randomId(random) : target.nextId(), payload);
+                    break;
+                case LOAD:
+                    target.table.getData(target.randomId(random));
+                    break;
+                case QUERY:
+                    long now  = System.currentTimeMillis();
+                    long from = start + (long) (random.nextDouble() * Math.max(1L, now - start));
+
+                    new TriQuery.Builder<>(target.table).timeCreatedFrom(from).timeCreatedTo(from + 1000L)
+                                                        .ORDER(TriTable.Columns.KEY_CREATED, TriQuery.ORDER.DESC).LIMIT(config.queryLimit)
+                                                        .build().query();
+                    break;
+                case DELETE:
+                    target.table.delete(target.randomId(random));
+                    break;
+            }
+        } catch (RuntimeException e) {
+            boolean locked = e instanceof SQLiteDatabaseLockedException || String.valueOf(e.getMessage()).contains("locked");
+
+            failures.incrementAndGet(locked ? 0 : 1);
+        }
+
+        long nanos = System.nanoTime() - begin;
+
+        latencies[op.ordinal()].record(nanos);
+
+        if(nanos > config.stallMillis * 1000000L)
+            failures.incrementAndGet(2);
+    }
+
+    private static String payload(int bytes) {
+        StringBuilder builder = new StringBuilder(bytes);
+
+        while(builder.length() < bytes)
+            builder.append((char) ('a' + builder.length() % 26));
+
+        return builder.toString();
+    }
+
+    private static long fileBytes(Context ctx, String name) {
+        File file = ctx.getDatabasePath(name);
+
+        return file.length() + new File(file.getPath() + "-wal").length() + new File(file.getPath() + "-journal").length();
+    }
+
+    /**
+     * a table of the run and it's identifiers, which are numeric strings of the same length, so they sort
+     */
+    private static final class Target {
+        private static final long BASE = 1000000000L;
+
+        final TriTable<TriData>   table;
+        final Class<?>            type;
+        final AtomicLong          next  = new AtomicLong();
+
+        @SuppressWarnings("unchecked")
+        Target(TriTable<? extends TriData> table, Class<?> type) {
+            this.table  = (TriTable<TriData>) table;
+            this.type   = type;
+        }
+
+        String nextId() {
+            return String.valueOf(BASE + next.getAndIncrement());
+        }
+
+        String randomId(Random random) {
+            return String.valueOf(BASE + (long) (random.nextDouble() * Math.max(1L, next.get())));
+        }
+
+        void save(String id, String payload) {
+            TriData data;
+
+            try {
+                data = (TriData) type.getDeclaredConstructor().newInstance();
+            } catch (InstantiationException | IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
+                throw new RuntimeException(e);
+            }
+
+            data.setId(id);
+
+            if(data instanceof LoadUser)
+                ((LoadUser) data).payload = payload;
+            else if(data instanceof LoadEvent)
+                ((LoadEvent) data).payload = payload;
+            else
+                ((LoadNote) data).payload = payload;
+
+            table.addData(data);
+        }
+    }
+
+}
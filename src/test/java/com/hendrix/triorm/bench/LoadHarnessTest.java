@@ -0,0 +1,45 @@
+package com.hendrix.triorm.bench;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * a short run of {@link LoadHarness} on the {@code JVM}. for a soak test raise
+ * {@link LoadHarness.Config#durationMillis} and run it alone:
+ *
+ * <pre>
+ * {@code ./gradlew test --tests com.hendrix.triorm.bench.LoadHarnessTest}
+ * </pre>
+ *
+ * @author Tomer Shalev
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 21)
+public class LoadHarnessTest {
+
+    @Test
+    public void shortRunReportsEveryInterval() {
+        LoadHarness.Config config = new LoadHarness.Config();
+
+        config.threads        = 4;
+        config.seedRows       = 500;
+        config.durationMillis = 3 * 1000L;
+        config.intervalMillis = 1000L;
+
+        LoadHarness.Report report = LoadHarness.run(RuntimeEnvironment.application, config, null);
+
+        System.out.println(report);
+
+        assertEquals(3, report.intervals.size());
+        assertTrue(report.total.ops() > 0);
+        assertEquals(0, report.total.errors);
+        assertTrue(report.total.rows > 0);
+    }
+
+}
@@ -0,0 +1,239 @@
+package com.hendrix.triorm.query;
+
+import com.hendrix.triorm.TriData;
+import com.hendrix.triorm.TriDatabase;
+import com.hendrix.triorm.TriOrm;
+import com.hendrix.triorm.TriTable;
+import com.hendrix.triorm.annotations.TriIndex;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * behavior of {@link TriQuery} against a database
+ *
+ * @author Tomer Shalev
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 21)
+public class TriQueryTest {
+    private static final String DB_NAME = "triorm_query_test";
+
+    @com.hendrix.triorm.annotations.TriTable(dbName = DB_NAME, tableName = "note")
+    public static class Note extends TriData {
+        private static final long serialVersionUID = 0L;
+
+        public String text = null;
+
+        public Note() {
+        }
+
+        public Note(String id, String type, long timeCreated) {
+            super(id);
+
+            setType(type);
+            setTimeCreated(timeCreated);
+            text = "note " + id;
+        }
+    }
+
+    @com.hendrix.triorm.annotations.TriTable(dbName = DB_NAME, tableName = "scored")
+    public static class Scored extends TriData {
+        private static final long serialVersionUID = 0L;
+
+        @TriIndex
+        public int    score = 0;
+        public String name  = null;
+
+        public Scored() {
+        }
+
+        public Scored(String id, int score) {
+            super(id);
+
+            this.score  = score;
+            this.name   = "scored " + id;
+        }
+    }
+
+    @com.hendrix.triorm.annotations.TriTable(dbName = DB_NAME, tableName = "cached")
+    public static class Cached extends TriData {
+        private static final long serialVersionUID = 0L;
+
+        public Cached() {
+        }
+
+        public Cached(String id, String type) {
+            super(id);
+
+            setType(type);
+        }
+    }
+
+    private TriDatabase _database = null;
+
+    @Before
+    public void setUp() {
+        RuntimeEnvironment.application.deleteDatabase(DB_NAME);
+
+        _database = new TriDatabase.Builder(RuntimeEnvironment.application).name(DB_NAME).addTable(Note.class)
+                                                                                 .addTable(Scored.class).addTable(Cached.class)
+                                                                                 .queryCache(Cached.class, 64 * 1024).build();
+    }
+
+    @After
+    public void tearDown() {
+        _database.close();
+
+        RuntimeEnvironment.application.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void iteratorIsNotChangedByBuildingAnotherQuery() {
+        for (int ix = 0; ix < 25; ix++)
+            new Note(String.format("n%02d", ix), "a", 1000L + ix).save();
+
+        for (int ix = 0; ix < 5; ix++)
+            new Note(String.format("m%02d", ix), "b", 1000L + ix).save();
+
+        TriQuery<Note>    query = TriOrm.query(Note.class).type("a").ORDER(TriTable.Columns.KEY_CREATED, TriQuery.ORDER.ASC)
+                                                          .fetchSize(10).build();
+        ArrayList<String> ids   = new ArrayList<>();
+
+        for (Note note : query) {
+            ids.add(note.getId());
+
+            // the table recycles it's query, so this rebuilds the query that is iterated
+            TriOrm.query(Note.class).type("b").ORDER(TriTable.Columns.KEY_TYPE, TriQuery.ORDER.DESC).build().query();
+        }
+
+        assertEquals(25, ids.size());
+
+        for (int ix = 0; ix < 25; ix++)
+            assertEquals(String.format("n%02d", ix), ids.get(ix));
+    }
+
+    @Test
+    public void deleteWithLimitRemovesOnlyTheFirstRowsOfTheOrder() {
+        for (int ix = 0; ix < 10; ix++)
+            new Note(String.format("n%02d", ix), "a", 1000L + ix).save();
+
+        int deleted = TriOrm.query(Note.class).type("a").ORDER(TriTable.Columns.KEY_CREATED, TriQuery.ORDER.ASC).LIMIT(3).build().delete();
+
+        assertEquals(3, deleted);
+        assertEquals(7, TriOrm.query(Note.class).build().count());
+
+        for (int ix = 0; ix < 10; ix++)
+            assertEquals(ix >= 3, TriOrm.load(Note.class, String.format("n%02d", ix)) != null);
+    }
+
+    @Test
+    public void updateWithLimitChangesOnlyTheFirstRowsOfTheOrder() {
+        for (int ix = 0; ix < 10; ix++)
+            new Note(String.format("n%02d", ix), "a", 1000L + ix).save();
+
+        int updated = TriOrm.query(Note.class).type("a").ORDER(TriTable.Columns.KEY_CREATED, TriQuery.ORDER.DESC).LIMIT(2).build().update("b", -1L);
+
+        assertEquals(2, updated);
+        assertEquals(8, TriOrm.query(Note.class).type("a").build().count());
+
+        ArrayList<String> ids = new ArrayList<>();
+
+        for (Note note : TriOrm.query(Note.class).type("b").ORDER(TriTable.Columns.KEY_ID, TriQuery.ORDER.ASC).build())
+            ids.add(note.getId());
+
+        assertEquals(Arrays.asList("n08", "n09"), ids);
+    }
+
+    @Test
+    public void indexedFieldsAreSelectedAndOrderedInSQL() {
+        for (int ix = 0; ix < 10; ix++)
+            new Scored(String.format("s%02d", ix), ix % 5).save();
+
+        assertEquals(2, TriOrm.query(Scored.class).where("score", 3).build().count());
+        assertEquals(6, TriOrm.query(Scored.class).whereBetween("score", 1, 3).build().count());
+
+        ArrayList<Integer> scores = new ArrayList<>();
+
+        for (Scored scored : TriOrm.query(Scored.class).ORDER("score", TriQuery.ORDER.DESC).LIMIT(3).build())
+            scores.add(scored.score);
+
+        assertEquals(Arrays.asList(4, 4, 3), scores);
+    }
+
+    @Test
+    public void savingAgainUpdatesTheIndexedColumn() {
+        Scored scored = new Scored("s00", 1);
+
+        scored.save();
+        scored.score = 7;
+        scored.save();
+
+        assertEquals(0, TriOrm.query(Scored.class).where("score", 1).build().count());
+        assertEquals(1, TriOrm.query(Scored.class).where("score", 7).build().count());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fieldsThatAreNotIndexedAreRejected() {
+        TriOrm.query(Scored.class).where("name", "scored s00");
+    }
+
+    @Test
+    public void cachedResultsAreInvalidatedByEveryWrite() {
+        TriQueryCache<Cached> cache = TriOrm.table(Cached.class).queryCache();
+
+        for (int ix = 0; ix < 5; ix++)
+            new Cached(String.format("c%02d", ix), "a").save();
+
+        assertEquals(5, cachedOfA().size());
+        assertEquals(5, cachedOfA().size());
+        assertEquals(1, cache.hits());
+
+        new Cached("c05", "a").save();
+
+        assertEquals(6, cachedOfA().size());
+
+        TriOrm.table(Cached.class).delete("c00");
+
+        assertEquals(5, cachedOfA().size());
+
+        TriOrm.query(Cached.class).type("a").LIMIT(1).build().update("b", -1L);
+
+        assertEquals(4, cachedOfA().size());
+
+        // a result that was cached inside of a transaction is dropped when it is rolled back
+        try {
+            _database.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    new Cached("c06", "a").save();
+
+                    assertEquals(5, cachedOfA().size());
+
+                    throw new IllegalStateException("rolled back");
+                }
+            });
+            fail("the transaction was not rolled back");
+        } catch (IllegalStateException ignore) {
+        }
+
+        assertEquals(4, cachedOfA().size());
+        assertEquals(1, cache.hits());
+    }
+
+    private static ArrayList<Cached> cachedOfA() {
+        return TriOrm.query(Cached.class).type("a").build().query();
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.hendrix.triorm.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * uniqueness and order of {@link MonotonicIdGenerator}
+ *
+ * @author Tomer Shalev
+ */
+public class MonotonicIdGeneratorTest {
+    private static final int THREADS    = 4;
+    private static final int PER_THREAD = 20000;
+
+    @Test
+    public void concurrentIdsAreUniqueAndIncreasing() throws Exception {
+        final MonotonicIdGenerator  generator = new MonotonicIdGenerator();
+        final Set<String>           ids       = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final CountDownLatch        start     = new CountDownLatch(1);
+
+        ExecutorService             pool      = Executors.newFixedThreadPool(THREADS);
+        ArrayList<Future<Boolean>>  results   = new ArrayList<>(THREADS);
+
+        try {
+            for (int ix = 0; ix < THREADS; ix++) {
+                results.add(pool.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        start.await();
+
+                        String  previous  = "";
+                        boolean ordered   = true;
+
+                        for (int jx = 0; jx < PER_THREAD; jx++) {
+                            String id = generator.nextId();
+
+                            ordered  &= id.compareTo(previous) > 0;
+                            previous  = id;
+
+                            ids.add(id);
+                        }
+
+                        return ordered;
+                    }
+                }));
+            }
+
+            start.countDown();
+
+            for (Future<Boolean> result : results)
+                assertTrue("identifiers of a thread are not increasing", result.get());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(THREADS * PER_THREAD, ids.size());
+    }
+
+    @Test
+    public void idsSortAfterLegacyIds() {
+        String legacy = String.valueOf(Long.MAX_VALUE);
+        String id     = new MonotonicIdGenerator().nextId();
+
+        assertTrue(id.compareTo(legacy) > 0);
+        assertTrue(id.compareTo(String.valueOf(System.currentTimeMillis() / 1000)) > 0);
+    }
+
+}